@@ -0,0 +1,153 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Deterministic inputs shared by the benchmarks: command sets, settings loaded from the bundled
+ * configuration files, and synthetic batch files.
+ */
+final class BenchmarkFixtures {
+
+    static final Logger LOGGER = Logger.getLogger("BatchCommands-Benchmarks");
+
+    /** Commands every server has; the rest of a command set is filled with generated names. */
+    private static final String[] VANILLA = {
+            "give", "tp", "teleport", "gamemode", "kill", "say", "tell", "msg", "time", "weather",
+            "effect", "enchant", "summon", "setblock", "fill", "clone", "execute", "scoreboard",
+            "team", "title", "tellraw", "list", "kick", "ban", "pardon", "whitelist", "difficulty",
+            "gamerule", "xp", "experience", "clear", "spawnpoint", "setworldspawn", "worldborder"
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * @return An unmodifiable set of {@code size} lowercase command names, including the vanilla ones.
+     */
+    static Set<String> knownCommands(int size) {
+        Random random = new Random(42);
+        Set<String> commands = new LinkedHashSet<>();
+        for (String command : VANILLA) {
+            if (commands.size() < size) {
+                commands.add(command);
+                commands.add("minecraft:" + command);
+            }
+        }
+        while (commands.size() < size) {
+            commands.add(randomWord(random, 3 + random.nextInt(10)));
+        }
+        return Collections.unmodifiableSet(commands);
+    }
+
+    /**
+     * @return Misspelled and unknown command names to look up, some of them close to a known one.
+     */
+    static String[] lookups(Set<String> knownCommands, int count) {
+        Random random = new Random(7);
+        List<String> known = new ArrayList<>(knownCommands);
+        String[] lookups = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) {
+                // One typo away from a real command
+                StringBuilder word = new StringBuilder(known.get(random.nextInt(known.size())));
+                word.setCharAt(random.nextInt(word.length()), (char) ('a' + random.nextInt(26)));
+                lookups[i] = word.toString();
+            } else {
+                lookups[i] = randomWord(random, 4 + random.nextInt(8));
+            }
+        }
+        return lookups;
+    }
+
+    /**
+     * @return The bundled config.yml and linter.yml, with linting limited to the given checks, no timeout
+     *         and no line memo, so every check is measured every time.
+     */
+    static BatchSettings settings(List<BatchLinter.LintCheck> order) {
+        return settings(order, 0);
+    }
+
+    /**
+     * @param memoMaxLines The size of the linter's line memo, 0 to disable it.
+     * @see #settings(List)
+     */
+    static BatchSettings settings(List<BatchLinter.LintCheck> order, int memoMaxLines) {
+        YamlConfiguration config = loadResource("config.yml");
+        YamlConfiguration linterConfig = loadResource("linter.yml");
+
+        List<String> names = new ArrayList<>();
+        for (BatchLinter.LintCheck check : order) {
+            names.add(check.name());
+        }
+        linterConfig.set("execution.lint-order", names);
+        linterConfig.set("execution.max-lint-time-ms", Long.MAX_VALUE / 2);
+        linterConfig.set("execution.memo-max-lines", memoMaxLines);
+        return BatchSettings.load(config, linterConfig, LOGGER);
+    }
+
+    /**
+     * @return A batch line like the ones found in real files: mostly commands, some sleeps and comments.
+     */
+    static String line(Random random, List<String> known) {
+        int kind = random.nextInt(100);
+        if (kind < 5) {
+            return "# " + randomWord(random, 12);
+        }
+        if (kind < 10) {
+            return "!sleep " + (random.nextInt(20) / 10.0);
+        }
+        if (kind < 12) {
+            return "";
+        }
+        String command = kind < 90 ? known.get(random.nextInt(known.size())) : randomWord(random, 6);
+        return (random.nextBoolean() ? "/" : "") + command + " @p " + randomWord(random, 5) + " " + random.nextInt(64);
+    }
+
+    /**
+     * Writes a synthetic batch file of the given length to a temporary file that is deleted on exit.
+     */
+    static File writeBatch(int lines, Set<String> knownCommands) throws IOException {
+        Random random = new Random(1);
+        List<String> known = new ArrayList<>(knownCommands);
+        File file = File.createTempFile("batchcommands-bench", ".batch");
+        file.deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines; i++) {
+                writer.write(line(random, known));
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    private static YamlConfiguration loadResource(String name) {
+        InputStream stream = BenchmarkFixtures.class.getClassLoader().getResourceAsStream(name);
+        if (stream == null) {
+            throw new IllegalStateException("Missing resource " + name);
+        }
+        return YamlConfiguration.loadConfiguration(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    private static String randomWord(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.Earth1283.batchCommands;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The security blacklist filter applied to every command line. {@code splitRegex} is the
+ * original {@code isDangerous} implementation, kept as a reference point for {@code tokenize}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BlacklistBenchmark {
+
+    private static final int LINES = 1024;
+
+    private Set<String> blacklist;
+    private String[] lines;
+    private int next;
+
+    @Setup
+    public void setup() {
+        blacklist = BenchmarkFixtures.settings(List.of()).linter.blacklist;
+
+        Set<String> knownCommands = BenchmarkFixtures.knownCommands(1000);
+        List<String> known = new ArrayList<>(knownCommands);
+        known.addAll(blacklist);
+        Random random = new Random(5);
+        lines = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            String line;
+            do {
+                line = BenchmarkFixtures.line(random, known);
+            } while (line.isEmpty() || line.startsWith("#") || line.startsWith("!"));
+            lines[i] = line;
+        }
+    }
+
+    @Benchmark
+    public boolean tokenize() {
+        BatchAction action = LineTokenizer.parse(lines[next++ & (LINES - 1)]);
+        return blacklist.contains(action.name);
+    }
+
+    @Benchmark
+    public boolean splitRegex() {
+        String temp = lines[next++ & (LINES - 1)];
+        if (temp.startsWith("/")) {
+            temp = temp.substring(1);
+        }
+        String[] parts = temp.split("\\s+");
+        if (parts.length == 0) return false;
+        return blacklist.contains(parts[0].toLowerCase());
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.Earth1283.batchCommands;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiling whole synthetic batch files: reading, tokenizing, the blacklist filter and every lint check.
+ * With the line memo enabled, every compile after the first finds the file's lines already checked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CompileBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int lines;
+
+    @Param({"true", "false"})
+    public boolean lint;
+
+    @Param({"0", "50000"})
+    public int memoMaxLines;
+
+    private BatchCompiler compiler;
+    private BatchSettings settings;
+    private Set<String> knownCommands;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        compiler = new BatchCompiler();
+        knownCommands = BenchmarkFixtures.knownCommands(1000);
+        settings = BenchmarkFixtures.settings(lint ? List.of(BatchLinter.LintCheck.values()) : List.of(), memoMaxLines);
+        file = BenchmarkFixtures.writeBatch(lines, knownCommands);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public CompiledBatch compile() throws IOException, BatchLinter.LinterTimeoutException {
+        return compiler.compile(file, knownCommands, settings);
+    }
+}
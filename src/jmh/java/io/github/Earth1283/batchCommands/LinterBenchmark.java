@@ -0,0 +1,65 @@
+package io.github.Earth1283.batchCommands;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of each {@link BatchLinter.LintCheck} on its own, per line, so {@code lint-order} and
+ * {@code max-lint-time-ms} can be tuned from numbers instead of guesses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LinterBenchmark {
+
+    private static final int LINES = 1024;
+
+    @Param({"META_SYNTAX", "UNKNOWN_META", "BLACKLIST", "EXISTENCE", "CUSTOM_PATTERN"})
+    public String check;
+
+    @Param({"1000"})
+    public int knownCommandCount;
+
+    private BatchLinter linter;
+    private LinterSettings settings;
+    private Set<String> knownCommands;
+    private BatchAction[] actions;
+    private int next;
+
+    @Setup
+    public void setup() {
+        linter = new BatchLinter();
+        settings = BenchmarkFixtures.settings(List.of(BatchLinter.LintCheck.valueOf(check))).linter;
+        knownCommands = BenchmarkFixtures.knownCommands(knownCommandCount);
+
+        Random random = new Random(3);
+        List<String> known = new ArrayList<>(knownCommands);
+        List<BatchAction> parsed = new ArrayList<>();
+        while (parsed.size() < LINES) {
+            BatchAction action = LineTokenizer.parse(BenchmarkFixtures.line(random, known));
+            if (action != null) {
+                parsed.add(action);
+            }
+        }
+        actions = parsed.toArray(new BatchAction[0]);
+    }
+
+    @Benchmark
+    public void check(Blackhole blackhole) throws BatchLinter.LinterTimeoutException {
+        BatchAction action = actions[next++ & (LINES - 1)];
+        blackhole.consume(linter.check(action, knownCommands, settings, Long.MAX_VALUE));
+    }
+}
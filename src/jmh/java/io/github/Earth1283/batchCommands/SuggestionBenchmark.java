@@ -0,0 +1,50 @@
+package io.github.Earth1283.batchCommands;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "Did you mean" lookups of unknown command names, and building the index they use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SuggestionBenchmark {
+
+    private static final int LOOKUPS = 256;
+
+    @Param({"100", "1000", "10000"})
+    public int knownCommandCount;
+
+    private Set<String> knownCommands;
+    private SuggestionIndex index;
+    private String[] lookups;
+    private int next;
+
+    @Setup
+    public void setup() {
+        knownCommands = BenchmarkFixtures.knownCommands(knownCommandCount);
+        index = SuggestionIndex.build(knownCommands);
+        lookups = BenchmarkFixtures.lookups(knownCommands, LOOKUPS);
+    }
+
+    @Benchmark
+    public String findClosestMatch() {
+        return index.closest(lookups[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public SuggestionIndex buildIndex() {
+        return SuggestionIndex.build(knownCommands);
+    }
+}
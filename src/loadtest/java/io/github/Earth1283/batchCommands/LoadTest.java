@@ -0,0 +1,367 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Measures what running batches costs the main thread, without a server.
+ * <p>
+ * The plugin is enabled against a {@link SimulatedServer}, and each {@link Workload} is started
+ * through the real {@code /filebatch} command: {@link FileBatchCommand}, the async compile, the
+ * {@link BatchRunManager} tick task and its sleeps all run as they would on a server, only the
+ * commands themselves are stubs with a fixed cost. For every workload this reports the main-thread
+ * time of the ticks that dispatched commands, the time from issuing {@code /filebatch} to the batch's
+ * first command, and heap growth, and writes them to a JSON file that can be compared between versions.
+ * <p>
+ * Run with {@code ./gradlew loadtest}, optionally with {@code -PloadtestArgs="..."}:
+ * <pre>
+ *   --workload NAME          concurrent, huge or dense_sleeps; repeatable (default: all)
+ *   --scale FACTOR           multiplies the number of lines per batch (default: 1)
+ *   --cost-us MICROS         time every command takes (default: 20)
+ *   --heavy-cost-us MICROS   time every "fill" takes (default: 500)
+ *   --set KEY=VALUE          overrides a config.yml setting, e.g. dispatch.mode=budgeted; repeatable
+ *   --unpaced                runs ticks back to back instead of every 50ms
+ *   --timeout-s SECONDS      gives up on a workload after this long (default: 600)
+ *   --max-p99-tick-ms MS     exits with status 1 if a workload's p99 tick time is higher
+ *   --output FILE            where to write the results (default: build/results/loadtest/results.json)
+ * </pre>
+ */
+public final class LoadTest {
+
+    private static final Logger LOGGER = Logger.getLogger("BatchCommands-LoadTest");
+
+    private record Result(Workload workload, int batches, long commands, long ticks, long busyTicks, boolean timedOut,
+                          double avgTickMs, double p50TickMs, double p99TickMs, double maxTickMs, long ticksOver50Ms,
+                          double avgFirstCommandMs, double maxFirstCommandMs, double wallMs,
+                          double heapPeakGrowthMb, double heapRetainedGrowthMb) {}
+
+    private final List<Workload> workloads = new ArrayList<>();
+    private double scale = 1;
+    private long costNanos = 20_000;
+    private long heavyCostNanos = 500_000;
+    private final Map<String, Object> overrides = new LinkedHashMap<>();
+    private boolean paced = true;
+    private long timeoutNanos = 600_000_000_000L;
+    private double maxP99TickMs = -1;
+    private File output = new File("build/results/loadtest/results.json");
+
+    private SimulatedServer server;
+    private BatchCommands plugin;
+    private PluginCommand command;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTest test = new LoadTest();
+        test.parse(args);
+        System.exit(test.run() ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--unpaced")) {
+                paced = false;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--workload" -> workloads.add(Workload.valueOf(value.toUpperCase(Locale.ROOT)));
+                case "--scale" -> scale = Double.parseDouble(value);
+                case "--cost-us" -> costNanos = Long.parseLong(value) * 1000;
+                case "--heavy-cost-us" -> heavyCostNanos = Long.parseLong(value) * 1000;
+                case "--timeout-s" -> timeoutNanos = Long.parseLong(value) * 1_000_000_000L;
+                case "--max-p99-tick-ms" -> maxP99TickMs = Double.parseDouble(value);
+                case "--output" -> output = new File(value);
+                case "--set" -> {
+                    int equals = value.indexOf('=');
+                    if (equals < 0) {
+                        throw new IllegalArgumentException("Expected KEY=VALUE after --set: " + value);
+                    }
+                    overrides.put(value.substring(0, equals), parseValue(value.substring(equals + 1)));
+                }
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (workloads.isEmpty()) {
+            workloads.addAll(Arrays.asList(Workload.values()));
+        }
+    }
+
+    /**
+     * @return True if every workload finished and stayed below {@code --max-p99-tick-ms}.
+     */
+    private boolean run() throws Exception {
+        Path dataFolder = Files.createTempDirectory("batchcommands-loadtest");
+
+        server = new SimulatedServer(LOGGER, paced);
+        for (String name : Workload.COMMANDS) {
+            server.registerCommand(name, costNanos);
+        }
+        server.registerCommand(Workload.HEAVY, heavyCostNanos);
+        Bukkit.setServer(server.server());
+
+        PluginDescriptionFile description;
+        try (InputStream in = resource("plugin.yml")) {
+            description = new PluginDescriptionFile(in);
+        }
+        plugin = createPlugin(new JavaPluginLoader(server.server()), description, dataFolder.toFile(),
+                new File(dataFolder.toFile(), "BatchCommands.jar"), server.scheduler(), loadSettings());
+        command = pluginCommand("filebatch", plugin);
+        server.setPluginCommand(command);
+        setEnabled(plugin, true);
+
+        List<Result> results = new ArrayList<>();
+        boolean passed = true;
+        try {
+            for (Workload workload : workloads) {
+                Result result = run(workload);
+                results.add(result);
+                print(result);
+                if (result.timedOut() || (maxP99TickMs >= 0 && result.p99TickMs() > maxP99TickMs)) {
+                    passed = false;
+                }
+            }
+        } finally {
+            setEnabled(plugin, false);
+            server.shutdown();
+        }
+
+        writeResults(results);
+        System.out.println("Results written to " + output.getPath());
+        return passed;
+    }
+
+    private Result run(Workload workload) throws IOException {
+        List<String> names = workload.write(new File(plugin.getBatchesFolder(), "loadtest"), "loadtest/", scale);
+        long expected = (long) workload.commandsPerBatch(scale) * names.size();
+
+        long[] issuedAt = new long[names.size()];
+        long[] firstCommandAt = new long[names.size()];
+        Arrays.fill(firstCommandAt, -1);
+        server.setListener((batch, nanoTime) -> {
+            if (firstCommandAt[batch] < 0) {
+                firstCommandAt[batch] = nanoTime;
+            }
+        });
+
+        System.gc();
+        long heapBefore = usedHeap();
+        long heapPeak = heapBefore;
+        long dispatchedBefore = server.dispatched;
+
+        // Like commands typed into the console, which run on the main thread
+        server.runNextTick(() -> {
+            for (int i = 0; i < names.size(); i++) {
+                issuedAt[i] = System.nanoTime();
+                command.execute(server.console(), "filebatch", new String[]{names.get(i)});
+            }
+        });
+
+        long start = System.nanoTime();
+        // Only ticks that dispatched commands; idle ticks would drown them out, especially unpaced
+        long[] tickNanos = new long[1024];
+        int busyTicks = 0;
+        long ticks = 0;
+        boolean timedOut = false;
+        BatchRunManager manager = plugin.getRunManager();
+        while (true) {
+            long dispatched = server.dispatched;
+            long nanos = server.tick();
+            ticks++;
+            if (server.dispatched > dispatched) {
+                if (busyTicks == tickNanos.length) {
+                    tickNanos = Arrays.copyOf(tickNanos, busyTicks * 2);
+                }
+                tickNanos[busyTicks++] = nanos;
+            }
+            if (ticks % 20 == 0) {
+                heapPeak = Math.max(heapPeak, usedHeap());
+            }
+            if (server.dispatched - dispatchedBefore >= expected && manager.getRunIds().isEmpty()) {
+                break;
+            }
+            if (System.nanoTime() - start >= timeoutNanos) {
+                timedOut = true;
+                for (BatchRun run : new ArrayList<>(manager.getRuns())) {
+                    manager.cancel(run);
+                }
+                break;
+            }
+        }
+        double wallMs = (System.nanoTime() - start) / 1e6;
+        heapPeak = Math.max(heapPeak, usedHeap());
+        System.gc();
+        long heapAfter = usedHeap();
+
+        long[] sorted = Arrays.copyOf(tickNanos, Math.max(1, busyTicks));
+        Arrays.sort(sorted);
+        long total = 0;
+        long over = 0;
+        for (long nanos : sorted) {
+            total += nanos;
+            if (nanos > 50_000_000L) {
+                over++;
+            }
+        }
+
+        double firstTotal = 0;
+        double firstMax = 0;
+        int started = 0;
+        for (int i = 0; i < names.size(); i++) {
+            if (firstCommandAt[i] >= 0) {
+                double ms = (firstCommandAt[i] - issuedAt[i]) / 1e6;
+                firstTotal += ms;
+                firstMax = Math.max(firstMax, ms);
+                started++;
+            }
+        }
+
+        return new Result(workload, names.size(), server.dispatched - dispatchedBefore, ticks, busyTicks, timedOut,
+                total / (double) sorted.length / 1e6, percentile(sorted, 50), percentile(sorted, 99), sorted[sorted.length - 1] / 1e6, over,
+                started == 0 ? -1 : firstTotal / started, firstMax, wallMs,
+                (heapPeak - heapBefore) / 1048576.0, (heapAfter - heapBefore) / 1048576.0);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Loads the settings from the bundled config.yml with the {@code --set} overrides, and the bundled linter.yml.
+     */
+    private BatchSettings loadSettings() throws IOException {
+        YamlConfiguration config = loadResource("config.yml");
+        overrides.forEach(config::set);
+        return BatchSettings.load(config, loadResource("linter.yml"), LOGGER);
+    }
+
+    private static YamlConfiguration loadResource(String name) throws IOException {
+        try (InputStream in = resource(name)) {
+            return YamlConfiguration.loadConfiguration(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Object parseValue(String value) {
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+            return Boolean.parseBoolean(value);
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ignored) {}
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ignored) {}
+        return value;
+    }
+
+    private static InputStream resource(String name) {
+        InputStream in = LoadTest.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IllegalStateException("Missing resource " + name);
+        }
+        return in;
+    }
+
+    /**
+     * Creates the plugin outside of a server, running on the simulated server's scheduler.
+     */
+    @SuppressWarnings({"deprecation", "removal"})
+    private static BatchCommands createPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder,
+                                              File file, TaskScheduler scheduler, BatchSettings settings) {
+        return new BatchCommands(loader, description, dataFolder, file, scheduler, settings);
+    }
+
+    /**
+     * Creates the command declared in plugin.yml. The server normally does this while loading the plugin.
+     */
+    private static PluginCommand pluginCommand(String name, Plugin plugin) throws ReflectiveOperationException {
+        Constructor<PluginCommand> constructor = PluginCommand.class.getDeclaredConstructor(String.class, Plugin.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(name, plugin);
+    }
+
+    /**
+     * Enables or disables the plugin the way the plugin manager does, which calls onEnable or onDisable.
+     */
+    private static void setEnabled(JavaPlugin plugin, boolean enabled) throws ReflectiveOperationException {
+        Method method = JavaPlugin.class.getDeclaredMethod("setEnabled", boolean.class);
+        method.setAccessible(true);
+        method.invoke(plugin, enabled);
+    }
+
+    private void print(Result result) {
+        System.out.printf(Locale.ROOT, "%-13s %3d batch(es), %9d commands in %6d ticks (%d dispatching)%s%n",
+                result.workload().name().toLowerCase(), result.batches(), result.commands(), result.ticks(),
+                result.busyTicks(), result.timedOut() ? " (TIMED OUT)" : "");
+        System.out.printf(Locale.ROOT, "              dispatching tick ms: avg %.3f, p50 %.3f, p99 %.3f, max %.3f, %d over 50ms%n",
+                result.avgTickMs(), result.p50TickMs(), result.p99TickMs(), result.maxTickMs(), result.ticksOver50Ms());
+        System.out.printf(Locale.ROOT, "              first command ms: avg %.1f, max %.1f; heap MB: peak +%.1f, retained +%.1f%n",
+                result.avgFirstCommandMs(), result.maxFirstCommandMs(), result.heapPeakGrowthMb(), result.heapRetainedGrowthMb());
+    }
+
+    private void writeResults(List<Result> results) throws IOException {
+        File folder = output.getAbsoluteFile().getParentFile();
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        try (Writer writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("{\n  \"scale\": " + scale + ",\n  \"costUs\": " + costNanos / 1000
+                    + ",\n  \"heavyCostUs\": " + heavyCostNanos / 1000 + ",\n  \"paced\": " + paced
+                    + ",\n  \"overrides\": {");
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : overrides.entrySet()) {
+                writer.write((first ? "" : ", ") + "\"" + entry.getKey() + "\": \"" + entry.getValue() + "\"");
+                first = false;
+            }
+            writer.write("},\n  \"workloads\": [");
+            first = true;
+            for (Result result : results) {
+                writer.write(first ? "\n" : ",\n");
+                first = false;
+                writer.write(String.format(Locale.ROOT, "    {\"workload\": \"%s\", \"batches\": %d, \"commands\": %d, \"ticks\": %d, \"busyTicks\": %d, "
+                                + "\"timedOut\": %b, \"avgTickMs\": %.4f, \"p50TickMs\": %.4f, \"p99TickMs\": %.4f, \"maxTickMs\": %.4f, "
+                                + "\"ticksOver50Ms\": %d, \"avgFirstCommandMs\": %.2f, \"maxFirstCommandMs\": %.2f, \"wallMs\": %.1f, "
+                                + "\"heapPeakGrowthMb\": %.2f, \"heapRetainedGrowthMb\": %.2f}",
+                        result.workload().name().toLowerCase(), result.batches(), result.commands(), result.ticks(),
+                        result.busyTicks(), result.timedOut(), result.avgTickMs(), result.p50TickMs(), result.p99TickMs(), result.maxTickMs(),
+                        result.ticksOver50Ms(), result.avgFirstCommandMs(), result.maxFirstCommandMs(), result.wallMs(),
+                        result.heapPeakGrowthMb(), result.heapRetainedGrowthMb()));
+            }
+            writer.write("\n  ]\n}\n");
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.Server;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandMap;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.plugin.PluginManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A stand-in for the server: the parts of {@link Server} and the command map that the plugin uses,
+ * implemented with dynamic proxies, a {@link TaskScheduler} for the plugin's tasks, and a tick loop
+ * driven by the caller.
+ * <p>
+ * The thread that creates the server is its main thread. Each {@link #tick()} runs the synchronous
+ * tasks that are due, like the server's tick loop, and measures how long that took. Commands are
+ * {@link StubCommand}s that spin for a configured time instead of doing anything, so the measured
+ * time is the plugin's own overhead plus a known, adjustable command cost.
+ */
+final class SimulatedServer {
+
+    /**
+     * A command that occupies the main thread for a fixed time. Lines whose first argument is
+     * {@code #<n>} are attributed to batch {@code n}, to measure its time to first command.
+     */
+    final class StubCommand extends Command {
+
+        private final long costNanos;
+
+        StubCommand(String name, long costNanos) {
+            super(name);
+            this.costNanos = costNanos;
+        }
+
+        @Override
+        public boolean execute(CommandSender sender, String label, String[] args) {
+            long start = System.nanoTime();
+            dispatched++;
+            if (args.length > 0 && args[0].startsWith("#") && listener != null) {
+                listener.accept(Integer.parseInt(args[0].substring(1)), start);
+            }
+            while (System.nanoTime() - start < costNanos) {
+                Thread.onSpinWait();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Runs global tasks in the tick loop and async tasks on a thread pool.
+     */
+    private final class Scheduler implements TaskScheduler {
+
+        @Override
+        public void runAsync(Runnable task) {
+            async.execute(task);
+        }
+
+        @Override
+        public void runGlobal(Runnable task) {
+            addTask(task, 1, 0);
+        }
+
+        @Override
+        public TaskScheduler.Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+            SimulatedServer.Task scheduled = addTask(task, delayTicks, periodTicks);
+            return () -> scheduled.cancelled = true;
+        }
+
+        @Override
+        public boolean isGlobalThread() {
+            return Thread.currentThread() == mainThread;
+        }
+    }
+
+    /** Notified on the main thread when a command attributed to a batch runs. */
+    interface DispatchListener {
+        void accept(int batch, long nanoTime);
+    }
+
+    private static final class Task {
+        final Runnable runnable;
+        final long period;
+        final long sequence;
+        long nextTick;
+        volatile boolean cancelled = false;
+
+        Task(Runnable runnable, long nextTick, long period, long sequence) {
+            this.runnable = runnable;
+            this.nextTick = nextTick;
+            this.period = period;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final long TICK_NANOS = 50_000_000L;
+    // The server reports its tick time as an average over the last 100 ticks
+    private static final int AVERAGE_TICKS = 100;
+
+    private final Thread mainThread = Thread.currentThread();
+    private final Logger logger;
+    private final Map<String, Command> commands = new LinkedHashMap<>();
+    private final ExecutorService async = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "LoadTest-Async");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Tasks scheduled from any thread start on the next tick, as with the real scheduler
+    private final ConcurrentLinkedQueue<Task> scheduled = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Task> due = new PriorityQueue<>(
+            Comparator.comparingLong((Task task) -> task.nextTick).thenComparingLong(task -> task.sequence));
+    private long sequence = 0;
+    private volatile long currentTick = 0;
+
+    private final long[] recentTickNanos = new long[AVERAGE_TICKS];
+    private final boolean paced;
+    private long tickStart = System.nanoTime();
+
+    private final Server server;
+    private final TaskScheduler scheduler = new Scheduler();
+    private final ConsoleCommandSender console;
+    private PluginCommand pluginCommand;
+    private DispatchListener listener;
+    long dispatched = 0;
+
+    /**
+     * @param paced True to wait out the rest of every 50ms tick like a real server, false to run ticks back to back.
+     */
+    SimulatedServer(Logger logger, boolean paced) {
+        this.logger = logger;
+        this.paced = paced;
+        this.console = stub(ConsoleCommandSender.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getName" -> "CONSOLE";
+            case "hasPermission", "isOp" -> true;
+            default -> defaultValue(method);
+        });
+        CommandMap commandMap = stub(CommandMap.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getKnownCommands" -> commands;
+            case "getCommand" -> commands.get(((String) args[0]).toLowerCase());
+            default -> defaultValue(method);
+        });
+        PluginManager pluginManager = stub(PluginManager.class, (proxy, method, args) -> defaultValue(method));
+
+        this.server = stub(Server.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getName" -> "LoadTest";
+            case "getVersion", "getBukkitVersion", "getMinecraftVersion" -> "simulated";
+            case "getLogger" -> logger;
+            case "getCommandMap" -> commandMap;
+            case "getPluginManager" -> pluginManager;
+            case "getConsoleSender" -> console;
+            case "getPluginCommand" -> pluginCommand;
+            case "isPrimaryThread" -> Thread.currentThread() == mainThread;
+            case "dispatchCommand" -> dispatchCommand((CommandSender) args[0], (String) args[1]);
+            case "getOnlinePlayers", "getWorlds" -> List.of();
+            case "getCurrentTick" -> (int) currentTick;
+            case "getAverageTickTime" -> averageTickMillis();
+            case "getTPS" -> {
+                double tps = Math.min(20, 1000 / Math.max(averageTickMillis(), paced ? 50 : 1e-3));
+                yield new double[]{tps, tps, tps};
+            }
+            default -> defaultValue(method);
+        });
+    }
+
+    Server server() {
+        return server;
+    }
+
+    /**
+     * Gets the scheduler to build the plugin with.
+     */
+    TaskScheduler scheduler() {
+        return scheduler;
+    }
+
+    ConsoleCommandSender console() {
+        return console;
+    }
+
+    /**
+     * Registers a command that spins for the given time whenever it runs.
+     */
+    void registerCommand(String name, long costNanos) {
+        StubCommand command = new StubCommand(name, costNanos);
+        commands.put(name, command);
+        commands.put("minecraft:" + name, command);
+    }
+
+    /**
+     * Sets the command returned for {@code getPluginCommand}, i.e. the one declared in plugin.yml.
+     */
+    void setPluginCommand(PluginCommand pluginCommand) {
+        this.pluginCommand = pluginCommand;
+    }
+
+    void setListener(DispatchListener listener) {
+        this.listener = listener;
+    }
+
+    long currentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Runs one tick: every synchronous task that is due, in the order they were scheduled.
+     * @return The main-thread time the tick took, in nanoseconds.
+     */
+    long tick() {
+        if (paced) {
+            long wait = tickStart + TICK_NANOS - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        tickStart = System.nanoTime();
+        currentTick++;
+
+        Task task;
+        while ((task = scheduled.poll()) != null) {
+            due.add(task);
+        }
+        while (!due.isEmpty() && due.peek().nextTick <= currentTick) {
+            task = due.poll();
+            if (task.cancelled) {
+                continue;
+            }
+            try {
+                task.runnable.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Task threw an exception", e);
+            }
+            if (task.period > 0 && !task.cancelled) {
+                task.nextTick = currentTick + task.period;
+                due.add(task);
+            }
+        }
+
+        long elapsed = System.nanoTime() - tickStart;
+        recentTickNanos[(int) (currentTick % AVERAGE_TICKS)] = elapsed;
+        return elapsed;
+    }
+
+    /**
+     * Runs a task on the main thread at the start of the next tick.
+     */
+    void runNextTick(Runnable runnable) {
+        addTask(runnable, 1, 0);
+    }
+
+    void shutdown() {
+        async.shutdownNow();
+    }
+
+    private double averageTickMillis() {
+        long total = 0;
+        for (long nanos : recentTickNanos) {
+            total += nanos;
+        }
+        return total / (double) AVERAGE_TICKS / 1_000_000.0;
+    }
+
+    private Task addTask(Runnable runnable, long delay, long period) {
+        Task task;
+        synchronized (this) {
+            task = new Task(runnable, currentTick + Math.max(1, delay), Math.max(0, period), sequence++);
+        }
+        scheduled.add(task);
+        return task;
+    }
+
+    private boolean dispatchCommand(CommandSender sender, String line) {
+        String[] parts = line.split(" ");
+        Command command = commands.get(parts[0].toLowerCase());
+        if (command == null) {
+            return false;
+        }
+        String[] args = new String[parts.length - 1];
+        System.arraycopy(parts, 1, args, 0, args.length);
+        return command.execute(sender, parts[0], args);
+    }
+
+    /**
+     * Implements an interface with a handler. Handlers return {@code defaultValue(method)} for calls they do not simulate.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(SimulatedServer.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return args != null && args.length == 1 && proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type.getSimpleName() + "@LoadTest";
+                default:
+                    return handler.invoke(proxy, method, args == null ? new Object[0] : args);
+            }
+        });
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0.0f;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == List.class || type == Collection.class) {
+            return new ArrayList<>();
+        } else if (type == Set.class) {
+            return Set.of();
+        } else if (type == Map.class) {
+            return Map.of();
+        } else if (type == String.class) {
+            return "";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.Earth1283.batchCommands;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A synthetic load: a number of batch files that are started in the same tick. Every command line
+ * names its batch as its first argument ({@code #<n>}), so the harness can tell when each batch
+ * dispatched its first command.
+ */
+enum Workload {
+    /** More batches than runs.max-concurrent, so some of them queue. */
+    CONCURRENT(32, 2_000, 200, 0.5),
+    /** A single file large enough to be streamed instead of compiled up front. */
+    HUGE(1, 1_000_000, 0, 0),
+    /** A short sleep after every command, so runs wake and go back to sleep all the time. */
+    DENSE_SLEEPS(16, 1_000, 1, 0.05);
+
+    /** The commands used by the workloads. {@link #HEAVY} gets a separate, higher cost. */
+    static final List<String> COMMANDS = List.of("say", "give", "tp");
+    static final String HEAVY = "fill";
+    // Every this many commands, the heavy one is used
+    private static final int HEAVY_EVERY = 50;
+
+    final int batches;
+    final int linesPerBatch;
+    /** A sleep follows every this many commands, 0 for none. */
+    final int sleepEvery;
+    final double sleepSeconds;
+
+    Workload(int batches, int linesPerBatch, int sleepEvery, double sleepSeconds) {
+        this.batches = batches;
+        this.linesPerBatch = linesPerBatch;
+        this.sleepEvery = sleepEvery;
+        this.sleepSeconds = sleepSeconds;
+    }
+
+    /**
+     * @return The number of commands per batch for a scale factor.
+     */
+    int commandsPerBatch(double scale) {
+        return Math.max(1, (int) (linesPerBatch * scale));
+    }
+
+    /**
+     * Writes the batch files of this workload.
+     * @param folder A folder inside the batches folder.
+     * @param prefix The path of {@code folder} relative to the batches folder, e.g. {@code loadtest/}.
+     * @return The names to pass to {@code /filebatch}, one per batch.
+     */
+    List<String> write(File folder, String prefix, double scale) throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        int commands = commandsPerBatch(scale);
+        List<String> names = new ArrayList<>();
+        for (int batch = 0; batch < batches; batch++) {
+            String name = name().toLowerCase() + "-" + batch;
+            File file = new File(folder, name + ".batch");
+            try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                for (int i = 1; i <= commands; i++) {
+                    writer.write(line(batch, i));
+                    writer.newLine();
+                    if (sleepEvery > 0 && i % sleepEvery == 0 && i < commands) {
+                        writer.write("!sleep " + sleepSeconds);
+                        writer.newLine();
+                    }
+                }
+            }
+            names.add(prefix + name);
+        }
+        return names;
+    }
+
+    private static String line(int batch, int i) {
+        if (i % HEAVY_EVERY == 0) {
+            return HEAVY + " #" + batch + " 0 " + i + " 0 8 " + (i + 8) + " 8 stone";
+        }
+        return COMMANDS.get(i % COMMANDS.size()) + " #" + batch + " " + i;
+    }
+}
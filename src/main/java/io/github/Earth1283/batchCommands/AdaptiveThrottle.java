@@ -0,0 +1,92 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.Bukkit;
+
+import java.util.logging.Logger;
+
+/**
+ * Adjusts how much batches may dispatch per tick to the load of the server, for the {@code adaptive}
+ * dispatch mode.
+ * <p>
+ * The limit is measured in cost units, where a command costs its configured weight (1 by default).
+ * Every {@code dispatch.adaptive.adjust-interval-ticks} ticks the server's average tick time is
+ * compared with the target: above it, the limit is halved; comfortably below it, the limit grows by a
+ * twentieth of {@code dispatch.max-commands-per-tick} (additive increase, multiplicative decrease).
+ * Below the TPS floor, dispatching stops entirely until the server recovers.
+ * Must only be used on the main thread.
+ */
+final class AdaptiveThrottle {
+
+    private static final double DECREASE_FACTOR = 0.5;
+    // The tick time has to be this far below the target before the limit grows again
+    private static final double INCREASE_HEADROOM = 0.9;
+
+    private final Logger logger;
+
+    private double limit = -1;
+    private boolean paused = false;
+    private boolean unsupported = false;
+    private int ticksSinceAdjust = 0;
+    private double lastMspt;
+    private double lastTps = 20;
+
+    AdaptiveThrottle(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Called once per tick, before dispatching.
+     */
+    void update(BatchSettings settings) {
+        double max = Math.max(1, settings.maxCommandsPerTick);
+        if (limit < 0) {
+            limit = max;
+        }
+        limit = Math.min(Math.max(limit, settings.adaptiveMinPerTick), max);
+
+        if (unsupported || ++ticksSinceAdjust < settings.adaptiveIntervalTicks) {
+            return;
+        }
+        ticksSinceAdjust = 0;
+
+        try {
+            lastMspt = Bukkit.getAverageTickTime();
+            lastTps = Bukkit.getTPS()[0];
+        } catch (UnsupportedOperationException e) {
+            // Some server software does not report server-wide tick times; keep the configured limit
+            logger.warning("The server does not report its tick time; adaptive dispatch uses the fixed limits instead.");
+            unsupported = true;
+            paused = false;
+            return;
+        }
+
+        paused = lastTps < settings.adaptiveMinTps;
+        if (lastMspt > settings.adaptiveTargetMspt) {
+            limit = Math.max(settings.adaptiveMinPerTick, limit * DECREASE_FACTOR);
+        } else if (lastMspt < settings.adaptiveTargetMspt * INCREASE_HEADROOM) {
+            limit = Math.min(max, limit + Math.max(1, max / 20));
+        }
+    }
+
+    /**
+     * @return The cost units batches may dispatch this tick.
+     */
+    double limit() {
+        return limit;
+    }
+
+    /**
+     * @return True while the server is below the TPS floor and nothing may be dispatched.
+     */
+    boolean isPaused() {
+        return paused;
+    }
+
+    double lastMspt() {
+        return lastMspt;
+    }
+
+    double lastTps() {
+        return lastTps;
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.Earth1283.batchCommands;
+
+/**
+ * A single parsed line of a batch file: a console command, a pause, an include, a loop, or a
+ * meta-command that could not be understood. Produced by {@link LineTokenizer}, then used as-is by the linter, the
+ * blacklist filter and the dispatcher, so no line is ever split or lowercased twice.
+ * Instances are immutable so compiled batches can be shared between runs, except for the
+ * {@link #target} the main thread caches on them.
+ */
+final class BatchAction {
+
+    enum Type {
+        /** A console command. */
+        COMMAND,
+        /** A valid {@code !sleep <seconds>}. */
+        SLEEP,
+        /** A {@code !sleep} without a valid duration. Never executed. */
+        INVALID_SLEEP,
+        /** An {@code !include <file>}. Once compiled, refers to the shared {@link #segment} of the file. */
+        INCLUDE,
+        /** A {@code !repeat <count>}, opening a loop. Once compiled, the loop body is the {@link #segment}. */
+        REPEAT,
+        /** A {@code !foreach <player|world>}, opening a loop. Once compiled, the loop body is the {@link #segment}. */
+        FOREACH,
+        /** The {@code !end} of a loop. Never part of a compiled batch. */
+        END,
+        /** A meta-command that is not supported. Dispatched like a command. */
+        UNKNOWN_META
+    }
+
+    final Type type;
+    /** The trimmed line. */
+    final String command;
+    /** The first word of the line, lowercase and without a leading slash, e.g. "give" or "!sleep". */
+    final String name;
+    /** The offsets of {@link #name} within {@link #command}. */
+    final int nameStart;
+    final int nameEnd;
+    /** The duration of a {@link Type#SLEEP}, or the number of iterations of a valid {@link Type#REPEAT}. */
+    final double seconds;
+    /**
+     * The unparseable duration of an {@link Type#INVALID_SLEEP}, the file name of an
+     * {@link Type#INCLUDE}, the unparseable count of a {@link Type#REPEAT}, or the lowercase target
+     * of a {@link Type#FOREACH}. Null if it was missing.
+     */
+    final String argument;
+    /**
+     * The compiled file of a resolved {@link Type#INCLUDE}, shared by every batch including it,
+     * or the compiled body of a loop.
+     */
+    final CompiledBatch segment;
+
+    /** The command this line resolved to when it was last dispatched. Only used on the main thread. */
+    DirectDispatcher.Target target;
+
+    BatchAction(String command) {
+        this(Type.COMMAND, command, null, 0, 0, 0, null);
+    }
+
+    BatchAction(double seconds) {
+        this(Type.SLEEP, null, null, 0, 0, seconds, null);
+    }
+
+    BatchAction(Type type, String command, String name, int nameStart, int nameEnd, double seconds, String argument) {
+        this(type, command, name, nameStart, nameEnd, seconds, argument, null);
+    }
+
+    BatchAction(Type type, String command, String name, int nameStart, int nameEnd, double seconds, String argument,
+                CompiledBatch segment) {
+        this.type = type;
+        this.command = command;
+        this.name = name;
+        this.nameStart = nameStart;
+        this.nameEnd = nameEnd;
+        this.seconds = seconds;
+        this.argument = argument;
+        this.segment = segment;
+    }
+
+    /**
+     * @return A copy of this {@link Type#INCLUDE} or loop that refers to the compiled file or body.
+     */
+    BatchAction withSegment(CompiledBatch segment) {
+        return new BatchAction(type, command, name, nameStart, nameEnd, seconds, argument, segment);
+    }
+
+    boolean opensLoop() {
+        return type == Type.REPEAT || type == Type.FOREACH;
+    }
+
+    /**
+     * @return True if this loop has a usable count or target. Invalid loops are skipped together with their body.
+     */
+    boolean isValidLoop() {
+        if (type == Type.REPEAT) {
+            return seconds >= 1;
+        }
+        return type == Type.FOREACH && (LineTokenizer.PLAYER.equals(argument) || LineTokenizer.WORLD.equals(argument));
+    }
+
+    boolean isMeta() {
+        return type != Type.COMMAND;
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.Earth1283.batchCommands;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory, least-recently-used cache of compiled batch files.
+ * Entries are keyed by the file's path, modification time and size, so a changed file never
+ * hits a stale entry. The {@link BatchFolderWatcher} additionally evicts entries as soon as
+ * their file changes on disk, which keeps the memory of outdated compilations from lingering.
+ */
+public class BatchCache {
+
+    /**
+     * Identifies one version of a batch file on disk.
+     */
+    record Key(Path path, long lastModified, long size) {
+
+        static Key of(File file) {
+            return new Key(file.toPath().toAbsolutePath().normalize(), file.lastModified(), file.length());
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxActions;
+    private final LinkedHashMap<Key, CompiledBatch> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedActions = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxEntries The maximum number of compiled batches to keep. Zero disables caching.
+     * @param maxActions The maximum number of actions held across all cached batches.
+     */
+    public BatchCache(int maxEntries, long maxActions) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxActions = Math.max(0, maxActions);
+    }
+
+    /**
+     * Looks up a compiled batch and records a hit or a miss. A batch is only returned if every file
+     * it includes is also unchanged.
+     * @param key The file identity to look up.
+     * @return The cached batch, or null if it is not cached.
+     */
+    public synchronized CompiledBatch get(Key key) {
+        CompiledBatch batch = entries.get(key);
+        if (batch != null && !isCurrent(batch)) {
+            cachedActions -= batch.actions.size();
+            entries.remove(key);
+            batch = null;
+        }
+        if (batch != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return batch;
+    }
+
+    /**
+     * Stores a compiled batch, evicting the least recently used entries if a limit is exceeded.
+     * Batches larger than the whole action budget are not cached at all.
+     */
+    public synchronized void put(Key key, CompiledBatch batch) {
+        if (maxEntries == 0 || batch.actions.size() > maxActions) {
+            return;
+        }
+
+        // An older version of the same file can never be hit again
+        invalidate(key.path());
+
+        entries.put(key, batch);
+        cachedActions += batch.actions.size();
+
+        Iterator<Map.Entry<Key, CompiledBatch>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || cachedActions > maxActions) && it.hasNext()) {
+            cachedActions -= it.next().getValue().actions.size();
+            it.remove();
+        }
+    }
+
+    /**
+     * Removes every cached version of the given file, and every batch that includes it.
+     * @param path The absolute path of the batch file.
+     */
+    public synchronized void invalidate(Path path) {
+        Iterator<Map.Entry<Key, CompiledBatch>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, CompiledBatch> entry = it.next();
+            if (entry.getKey().path().equals(path) || dependsOn(entry.getValue(), path)) {
+                cachedActions -= entry.getValue().actions.size();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached batches, e.g. after a configuration change that affects compilation.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        cachedActions = 0;
+    }
+
+    private static boolean isCurrent(CompiledBatch batch) {
+        for (Key dependency : batch.dependencies) {
+            if (!Key.of(dependency.path().toFile()).equals(dependency)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean dependsOn(CompiledBatch batch, Path path) {
+        for (Key dependency : batch.dependencies) {
+            if (dependency.path().equals(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
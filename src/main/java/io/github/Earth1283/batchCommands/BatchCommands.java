@@ -1,24 +1,59 @@
 package io.github.Earth1283.batchCommands;
 
+import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
+import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 
 import java.io.File;
 
 public final class BatchCommands extends JavaPlugin {
 
+    private TaskScheduler taskScheduler;
     private File batchesFolder;
-    private String fileExtension;
-    
+
     private File linterConfigFile;
     private FileConfiguration linterConfig;
+    private volatile BatchSettings settings;
+
+    private volatile BatchCache batchCache;
+    private BatchFolderWatcher folderWatcher;
+    private BatchFileIndex fileIndex;
+    private KnownCommandRegistry commandRegistry;
+    private BatchRunManager runManager;
+    private RunJournal runJournal;
+
+    public BatchCommands() {
+    }
+
+    /**
+     * Creates the plugin outside of a server, as the load test does. onEnable then uses the given
+     * scheduler and settings instead of picking one for the server and loading them from config.yml.
+     */
+    @SuppressWarnings({"deprecation", "removal"})
+    BatchCommands(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file,
+                  TaskScheduler taskScheduler, BatchSettings settings) {
+        super(loader, description, dataFolder, file);
+        this.taskScheduler = taskScheduler;
+        this.settings = settings;
+    }
 
     @Override
     public void onEnable() {
         // Plugin startup logic
         getLogger().info("BatchCommands is starting up...");
 
+        // Folia has no main thread; batches then run on its global region instead
+        if (taskScheduler == null) {
+            taskScheduler = TaskScheduler.create(this);
+            if (TaskScheduler.isFolia()) {
+                getLogger().info("Folia detected, batches run on the global region scheduler.");
+            }
+        }
+
         // Save default configs if they don't exist
         saveDefaultConfig();
         saveResource("linter.yml", false);
@@ -28,12 +63,12 @@ public final class BatchCommands extends JavaPlugin {
             getDataFolder().mkdirs();
         }
 
-        // Load settings from config
-        String folderName = getConfig().getString("settings.batch-folder", "batches");
-        this.fileExtension = getConfig().getString("settings.file-extension", ".batch");
-        
-        // Load linter config
+        // Load settings from config and linter config
         loadLinterConfig();
+        if (settings == null) {
+            settings = BatchSettings.load(getConfig(), linterConfig, getLogger());
+        }
+        String folderName = settings.batchFolder;
 
         // Create the batch files sub-folder
         batchesFolder = new File(getDataFolder(), folderName);
@@ -42,6 +77,40 @@ public final class BatchCommands extends JavaPlugin {
             getLogger().info("Created '" + folderName + "' directory at: " + batchesFolder.getPath());
         }
 
+        // Cache compiled batches and drop them as soon as their file changes
+        batchCache = new BatchCache(settings.cacheMaxEntries, settings.cacheMaxActions);
+        folderWatcher = new BatchFolderWatcher(this, batchesFolder.toPath());
+        folderWatcher.addListener(path -> {
+            if (path == null) {
+                batchCache.clear();
+            } else {
+                batchCache.invalidate(path);
+            }
+        });
+
+        // Keep a sorted list of batch files for tab completion instead of listing the folder per keystroke
+        fileIndex = new BatchFileIndex(batchesFolder.toPath(), FileBatchCommand.SUBCOMMANDS, getLogger());
+        fileIndex.rebuild();
+        folderWatcher.addListener(fileIndex::update);
+        folderWatcher.start();
+
+        // Track the server's commands for the linter without rebuilding them on every run
+        commandRegistry = new KnownCommandRegistry(this);
+        commandRegistry.refresh();
+        getServer().getPluginManager().registerEvents(commandRegistry, this);
+
+        // Record the progress of runs, and offer those interrupted by the last shutdown or crash for resuming
+        if (settings.journalEnabled) {
+            runJournal = RunJournal.open(new File(getDataFolder(), "journal.dat").toPath(),
+                    settings.journalCommitIntervalMillis, getLogger());
+            if (runJournal != null && !runJournal.getInterrupted().isEmpty()) {
+                getLogger().info(runJournal.getInterrupted().size()
+                        + " batch run(s) were interrupted. Use /filebatch recover to list and resume them.");
+            }
+        }
+
+        runManager = new BatchRunManager(this);
+
         // Register the command and its tab completer
         this.getCommand("filebatch").setExecutor(new FileBatchCommand(this));
         this.getCommand("filebatch").setTabCompleter(new FileBatchTabCompleter(this));
@@ -52,6 +121,15 @@ public final class BatchCommands extends JavaPlugin {
     @Override
     public void onDisable() {
         // Plugin shutdown logic
+        if (runManager != null) {
+            runManager.shutdown();
+        }
+        if (runJournal != null) {
+            runJournal.close();
+        }
+        if (folderWatcher != null) {
+            folderWatcher.close();
+        }
         getLogger().info("BatchCommands has been disabled.");
     }
     
@@ -67,6 +145,92 @@ public final class BatchCommands extends JavaPlugin {
         return linterConfig;
     }
 
+    /**
+     * Re-reads config.yml and linter.yml and atomically swaps in a new settings snapshot.
+     * Cached batches are dropped, since they were compiled against the old rules.
+     * The batch folder itself is only read on startup.
+     */
+    public void reloadSettings() {
+        reloadConfig();
+        loadLinterConfig();
+        BatchSettings reloaded = BatchSettings.load(getConfig(), linterConfig, getLogger());
+        if (!reloaded.batchFolder.equals(settings.batchFolder)) {
+            getLogger().warning("Changing 'settings.batch-folder' requires a restart.");
+        }
+        settings = reloaded;
+        batchCache = new BatchCache(reloaded.cacheMaxEntries, reloaded.cacheMaxActions);
+    }
+
+    /**
+     * Gets the scheduler for async work and for work on the global (main) thread.
+     * @return The scheduler matching the server software.
+     */
+    public TaskScheduler getTaskScheduler() {
+        return taskScheduler;
+    }
+
+    /**
+     * Gets the current configuration snapshot. The returned object never changes;
+     * a reload replaces it with a new instance.
+     * @return The current settings.
+     */
+    public BatchSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Gets the index of files in the batches folder and its subfolders.
+     * @return The file index.
+     */
+    public BatchFileIndex getFileIndex() {
+        return fileIndex;
+    }
+
+    /**
+     * Gets the cache of compiled batch files.
+     * @return The batch cache.
+     */
+    public BatchCache getBatchCache() {
+        return batchCache;
+    }
+
+    /**
+     * Sends a configured message, if it is not empty.
+     * @param sender The recipient.
+     * @param key The key below {@code messages} in config.yml.
+     * @param placeholders Placeholders used by the message.
+     */
+    public void sendMessage(CommandSender sender, String key, TagResolver... placeholders) {
+        MessageTemplate template = settings.message(key);
+        if (template != null && !template.isEmpty()) {
+            sender.sendMessage(template.render(placeholders));
+        }
+    }
+
+    /**
+     * Gets the manager of all running batches.
+     * @return The batch run manager.
+     */
+    public BatchRunManager getRunManager() {
+        return runManager;
+    }
+
+    /**
+     * Gets the journal recording the progress of runs.
+     * @return The run journal, or null if it is disabled or could not be opened.
+     */
+    public RunJournal getRunJournal() {
+        return runJournal;
+    }
+
+    /**
+     * Gets the registry holding the snapshot of known server commands.
+     * @return The known command registry.
+     */
+    public KnownCommandRegistry getCommandRegistry() {
+        return commandRegistry;
+    }
+
     /**
      * Gets the folder where batch files are stored.
      * @return The File object for the configured batch directory.
@@ -80,6 +244,6 @@ public final class BatchCommands extends JavaPlugin {
      * @return The file extension (e.g., ".batch").
      */
     public String getFileExtension() {
-        return fileExtension;
+        return settings.fileExtension;
     }
 }
@@ -0,0 +1,511 @@
+package io.github.Earth1283.batchCommands;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Turns a batch file into a {@link CompiledBatch}: reads it, parses every line into
+ * {@link BatchAction}s with the {@link LineTokenizer}, applies the security blacklist and runs the linter.
+ * This is safe to call from an async thread.
+ * <p>
+ * Files named by {@code !include} are compiled once into a segment that every including batch
+ * refers to. Segments are memoized within a compilation and kept in the {@link BatchCache}
+ * between compilations, so a shared setup file is only read and linted again after it changes.
+ * <p>
+ * Loops ({@code !repeat} and {@code !foreach} up to the matching {@code !end}) compile to a
+ * single action holding the body once; the body is repeated by the {@link SegmentCursor} at run time.
+ */
+public class BatchCompiler {
+
+    private final BatchLinter linter = new BatchLinter();
+    private final Path includeRoot;
+    private final Supplier<BatchCache> cache;
+
+    /**
+     * Creates a compiler without support for {@code !include}, which is reported as a warning.
+     */
+    public BatchCompiler() {
+        this(null, () -> null);
+    }
+
+    /**
+     * @param includeRoot The folder included files are resolved against; nothing outside of it can be included.
+     * @param cache Supplies the cache shared segments are kept in, which may be replaced on reload.
+     */
+    public BatchCompiler(Path includeRoot, Supplier<BatchCache> cache) {
+        this.includeRoot = includeRoot == null ? null : includeRoot.toAbsolutePath().normalize();
+        this.cache = cache;
+    }
+
+    /**
+     * Reads, parses and lints a batch file.
+     * @param batchFile The file to compile.
+     * @param knownCommands A set of all known command aliases on the server (lowercase).
+     * @param settings The configuration snapshot to compile against.
+     * @return The compiled batch.
+     * @throws IOException if the file could not be read.
+     * @throws BatchLinter.LinterTimeoutException if the linter timed out and the configuration asks to cancel execution.
+     */
+    public CompiledBatch compile(File batchFile, Set<String> knownCommands, BatchSettings settings) throws IOException, BatchLinter.LinterTimeoutException {
+        return begin(batchFile, knownCommands, settings, Integer.MAX_VALUE).compileAll();
+    }
+
+    /**
+     * Hashes a batch file together with every file it includes, directly or not. A run can only be
+     * resumed by position while none of them changed, so this is what the {@link RunJournal} compares.
+     * Reads every file, so call it from an async thread.
+     * @throws IOException if the file could not be read.
+     */
+    byte[] hashSources(File batchFile, BatchSettings settings) throws IOException {
+        MessageDigest digest = PrecompiledBatch.sha256();
+        Set<Path> visited = new HashSet<>();
+        Path path = batchFile.toPath().toAbsolutePath().normalize();
+        visited.add(path);
+        hashSources(path, settings, digest, visited);
+        return digest.digest();
+    }
+
+    private void hashSources(Path file, BatchSettings settings, MessageDigest digest, Set<Path> visited) throws IOException {
+        List<Path> includes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file.toFile()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+                if (includeRoot != null && line.indexOf('!') >= 0) {
+                    BatchAction action = LineTokenizer.parse(line);
+                    if (action != null && action.type == BatchAction.Type.INCLUDE && action.argument != null) {
+                        Path included = resolveInclude(action.argument, settings);
+                        if (included != null) {
+                            includes.add(included);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Every file counts once, like its shared segment, which also stops at cycles
+        for (Path included : includes) {
+            if (visited.add(included)) {
+                digest.update(included.toString().getBytes(StandardCharsets.UTF_8));
+                if (included.toFile().isFile()) {
+                    digest.update((byte) 0);
+                    hashSources(included, settings, digest, visited);
+                } else {
+                    digest.update((byte) 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The file an {@code !include} refers to, or null if it is outside of the include root.
+     */
+    private Path resolveInclude(String argument, BatchSettings settings) {
+        String extension = settings.fileExtension;
+        String fileName = argument.toLowerCase().endsWith(extension) ? argument : argument + extension;
+        Path path = includeRoot.resolve(fileName).normalize();
+        return path.startsWith(includeRoot) ? path : null;
+    }
+
+    /**
+     * Starts a compilation that is fed one line at a time, e.g. by a streaming reader.
+     * @param batchFile The file being compiled, which includes are checked against for cycles.
+     * @param maxWarnings The maximum number of warnings to keep; further ones are only counted.
+     */
+    Compilation begin(File batchFile, Set<String> knownCommands, BatchSettings settings, int maxWarnings) {
+        return new Compilation(batchFile, knownCommands, settings, maxWarnings, null);
+    }
+
+    /**
+     * The state of a single compilation. Not thread-safe; feed it from one thread.
+     */
+    final class Compilation {
+
+        private final File file;
+        private final Set<String> knownCommands;
+        private final BatchSettings settings;
+        private final LinterSettings linterSettings;
+        private final int maxWarnings;
+        // The compilation whose linter time this one uses up; itself unless this is an included file
+        private final Compilation root;
+        // Linter time left, in nanoseconds. Only time spent linting counts, not reading the file or,
+        // when streaming, waiting for the main thread to take the next chunk
+        private long lintNanosLeft;
+
+        // Shared by a compilation and the compilations of everything it includes
+        private final Deque<Path> includeChain;
+        private final Map<Path, CompiledBatch> segments;
+        private final Set<Path> reportedIncludes;
+
+        /** The versions of every file included so far, directly or indirectly. */
+        final Set<BatchCache.Key> dependencies = new LinkedHashSet<>();
+        /** True once an include was skipped because it would include one of the files being compiled. */
+        private boolean hitCycle = false;
+
+        // The loops that are open at the current line, innermost first
+        private final Deque<Block> blocks = new ArrayDeque<>();
+        // Actions held in the bodies of the open loops
+        private long loopActions = 0;
+
+        List<BatchAction> actions = new ArrayList<>();
+        final List<LintWarning> warnings = new ArrayList<>();
+        final List<String> invalidSleepLines = new ArrayList<>();
+        final EnumMap<BatchLinter.LintCheck, Long> timings = new EnumMap<>(BatchLinter.LintCheck.class);
+        int skippedCount = 0;
+        long actionCount = 0;
+
+        private boolean linterTimedOut = false;
+        private int droppedWarnings = 0;
+
+        private final List<BatchAction> pendingLines = new ArrayList<>();
+        private int[] pendingLineNumbers = new int[16];
+
+        private Compilation(File file, Set<String> knownCommands, BatchSettings settings, int maxWarnings, Compilation parent) {
+            this.file = file;
+            this.knownCommands = knownCommands;
+            this.settings = settings;
+            this.linterSettings = settings.linter;
+            this.maxWarnings = maxWarnings;
+            if (parent == null) {
+                this.root = this;
+                this.lintNanosLeft = linterSettings.maxLintTimeMs * 1_000_000L;
+                this.includeChain = new ArrayDeque<>();
+                this.segments = new HashMap<>();
+                this.reportedIncludes = new HashSet<>();
+                includeChain.push(file.toPath().toAbsolutePath().normalize());
+            } else {
+                // Included files count towards the linter time of the file including them
+                this.root = parent.root;
+                this.includeChain = parent.includeChain;
+                this.segments = parent.segments;
+                this.reportedIncludes = parent.reportedIncludes;
+            }
+        }
+
+        /**
+         * Reads the whole file and finishes the compilation.
+         */
+        private CompiledBatch compileAll() throws IOException, BatchLinter.LinterTimeoutException {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    accept(line, lineNumber);
+                }
+            }
+
+            lintPending();
+            finish();
+            return new CompiledBatch(actions, warnings, timings, invalidSleepLines, skippedCount, dependencies);
+        }
+
+        /**
+         * Parses one raw line of the file and queues it for {@link #lintPending()}.
+         * Included files are compiled right away.
+         * @throws BatchLinter.LinterTimeoutException if linting an included file timed out and the
+         *                                            configuration asks to cancel execution.
+         */
+        void accept(String line, int lineNumber) throws BatchLinter.LinterTimeoutException {
+            BatchAction action = LineTokenizer.parse(line);
+            if (action == null) {
+                return;
+            }
+
+            // Queue the line for the linter, which checks it together with its neighbours
+            if (!linterTimedOut && linterSettings.enabled) {
+                pendingLines.add(action);
+                if (pendingLines.size() > pendingLineNumbers.length) {
+                    pendingLineNumbers = Arrays.copyOf(pendingLineNumbers, pendingLineNumbers.length * 2);
+                }
+                pendingLineNumbers[pendingLines.size() - 1] = lineNumber;
+            }
+
+            if (action.type == BatchAction.Type.SLEEP) {
+                addAction(action);
+                return;
+            }
+            if (action.type == BatchAction.Type.INVALID_SLEEP) {
+                addInvalidSleep(action.command);
+                return;
+            }
+            if (action.type == BatchAction.Type.INCLUDE) {
+                // A missing file name is reported by the linter
+                if (action.argument != null) {
+                    include(action, lineNumber);
+                }
+                return;
+            }
+            if (action.opensLoop()) {
+                // Invalid loops are reported by the linter; their body is still consumed up to the !end
+                blocks.push(new Block(action, lineNumber));
+                return;
+            }
+            if (action.type == BatchAction.Type.END) {
+                closeLoop(lineNumber);
+                return;
+            }
+
+            // Check security for normal commands
+            if (settings.removeDangerous && linterSettings.blacklist.contains(action.name)) {
+                skippedCount++;
+                return;
+            }
+
+            // Custom patterns with severity 'block' always apply, even if the linter timed out
+            if (linterSettings.customPatterns.matchBlocking(action.command) != null) {
+                skippedCount++;
+                return;
+            }
+            addAction(action);
+        }
+
+        /**
+         * Lints every line accepted since the last call, in parallel when there are many of them.
+         * @throws BatchLinter.LinterTimeoutException if the linter timed out and the configuration asks to cancel execution.
+         */
+        void lintPending() throws BatchLinter.LinterTimeoutException {
+            if (pendingLines.isEmpty()) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            long deadline = System.currentTimeMillis() + Math.max(0, root.lintNanosLeft / 1_000_000);
+            BatchLinter.BulkResult result = linter.checkAll(pendingLines, pendingLineNumbers, knownCommands, linterSettings, deadline);
+            root.lintNanosLeft -= System.nanoTime() - start;
+            pendingLines.clear();
+
+            for (LintWarning warning : result.warnings) {
+                addWarning(warning);
+            }
+            if (linterSettings.debugMode) {
+                result.timings.forEach((check, time) -> timings.merge(check, time, Long::sum));
+            }
+            if (result.timedOut) {
+                linterTimedOut = true;
+                if (linterSettings.cancelOnTimeout) {
+                    throw new BatchLinter.LinterTimeoutException();
+                }
+                warnings.add(new LintWarning(null, 0, null, "Linter timed out. Skipping checks for remaining lines."));
+            }
+        }
+
+        /**
+         * Adds the warnings that can only be determined once the whole file has been read.
+         */
+        void finish() {
+            while (!blocks.isEmpty()) {
+                Block block = blocks.pop();
+                addWarning(block.lineNumber, block.opener.command.substring(block.opener.nameStart, block.opener.nameEnd)
+                        + " is never closed with !end. Its lines were skipped.");
+            }
+            if (droppedWarnings > 0) {
+                warnings.add(new LintWarning(null, 0, null, "... and " + droppedWarnings + " more warning(s)."));
+            }
+
+            // Check for empty file warning
+            if (actionCount == 0 && linterSettings.enabled && linterSettings.warnEmptyFile) {
+                warnings.add(new LintWarning(null, 0, null, "File appears to be empty or contains no valid commands."));
+            }
+        }
+
+        /**
+         * Resolves an {@code !include} to the shared segment of the included file: compiled earlier in
+         * this compilation, cached, or compiled now.
+         */
+        private void include(BatchAction action, int lineNumber) throws BatchLinter.LinterTimeoutException {
+            if (includeRoot == null) {
+                addWarning(lineNumber, "!include is not available here.");
+                return;
+            }
+
+            String extension = settings.fileExtension;
+            String fileName = action.argument.toLowerCase().endsWith(extension) ? action.argument : action.argument + extension;
+            Path path = resolveInclude(action.argument, settings);
+            File included = path == null ? null : path.toFile();
+            if (included == null || !included.isFile()) {
+                addWarning(lineNumber, "Included file '" + fileName + "' does not exist.");
+                return;
+            }
+
+            if (includeChain.contains(path)) {
+                List<Path> cycle = new ArrayList<>(includeChain);
+                Collections.reverse(cycle);
+                cycle.add(path);
+                addWarning(lineNumber, "Include cycle: " + cycle.stream()
+                        .map(this::displayName).collect(Collectors.joining(" -> ")) + ". Skipped.");
+                hitCycle = true;
+                return;
+            }
+
+            CompiledBatch segment = segments.get(path);
+            BatchCache.Key key = BatchCache.Key.of(included);
+            if (segment == null) {
+                BatchCache batchCache = cache.get();
+                segment = batchCache == null ? null : batchCache.get(key);
+                if (segment == null) {
+                    Compilation child = new Compilation(included, knownCommands, settings, Integer.MAX_VALUE, this);
+                    includeChain.push(path);
+                    try {
+                        segment = child.compileAll();
+                    } catch (IOException e) {
+                        addWarning(lineNumber, "Could not read included file '" + fileName + "'.");
+                        return;
+                    } finally {
+                        includeChain.pop();
+                    }
+                    // A segment that skipped a cycle depends on who included it, so it is not shared
+                    if (child.hitCycle) {
+                        hitCycle = true;
+                    } else {
+                        segments.put(path, segment);
+                        if (batchCache != null) {
+                            batchCache.put(key, segment);
+                        }
+                    }
+                } else {
+                    segments.put(path, segment);
+                }
+            }
+
+            dependencies.add(key);
+            dependencies.addAll(segment.dependencies);
+            skippedCount += segment.skippedCount;
+            actionCount += segment.actions.size();
+            // Report problems in a shared file once, no matter how often it is included
+            if (reportedIncludes.add(path)) {
+                String name = displayName(path);
+                for (LintWarning warning : segment.warnings) {
+                    addWarning(warning.inFile(name));
+                }
+                for (String invalid : segment.invalidSleepLines) {
+                    addInvalidSleep(name + ": " + invalid);
+                }
+                if (linterSettings.debugMode) {
+                    segment.timings.forEach((check, time) -> timings.merge(check, time, Long::sum));
+                }
+            }
+
+            target().add(action.withSegment(segment));
+        }
+
+        private void closeLoop(int lineNumber) {
+            if (blocks.isEmpty()) {
+                addWarning(lineNumber, "!end without a matching !repeat or !foreach. Skipped.");
+                return;
+            }
+            Block block = blocks.pop();
+            if (blocks.isEmpty()) {
+                loopActions = 0;
+            }
+            // Empty loops are dropped, so the cursor never spins through iterations without commands
+            if (block.opener.isValidLoop() && !block.actions.isEmpty()) {
+                CompiledBatch body = new CompiledBatch(block.actions, List.of(),
+                        new EnumMap<>(BatchLinter.LintCheck.class), List.of(), 0);
+                target().add(block.opener.withSegment(body));
+            }
+        }
+
+        /**
+         * @return The list new actions go to: the body of the innermost open loop, or the batch itself.
+         */
+        private List<BatchAction> target() {
+            return blocks.isEmpty() ? actions : blocks.peek().actions;
+        }
+
+        private String displayName(Path path) {
+            return path.startsWith(includeRoot) ? includeRoot.relativize(path).toString().replace(File.separatorChar, '/') : path.toString();
+        }
+
+        /**
+         * Hands over the actions parsed since the last call and starts a new list.
+         */
+        List<BatchAction> drainActions() {
+            List<BatchAction> drained = actions;
+            actions = new ArrayList<>();
+            return drained;
+        }
+
+        private void addAction(BatchAction action) {
+            target().add(action);
+            actionCount++;
+            if (!blocks.isEmpty()) {
+                loopActions++;
+            }
+        }
+
+        /**
+         * @return The number of lines waiting for {@link #lintPending()}.
+         */
+        int pendingLineCount() {
+            return pendingLines.size();
+        }
+
+        /**
+         * @return The number of actions in the bodies of the loops that are still open. They stay in
+         *         memory until the outermost loop is closed.
+         */
+        long openLoopActions() {
+            return loopActions;
+        }
+
+        /**
+         * @return The line of the outermost loop that is still open, or 0 if there is none.
+         */
+        int openLoopLine() {
+            return blocks.isEmpty() ? 0 : blocks.peekLast().lineNumber;
+        }
+
+        private void addInvalidSleep(String line) {
+            if (invalidSleepLines.size() < maxWarnings) {
+                invalidSleepLines.add(line);
+            }
+        }
+
+        private void addWarning(int lineNumber, String message) {
+            addWarning(new LintWarning(null, lineNumber, null, message));
+        }
+
+        private void addWarning(LintWarning warning) {
+            if (warnings.size() < maxWarnings) {
+                warnings.add(warning);
+            } else {
+                droppedWarnings++;
+            }
+        }
+    }
+
+    /**
+     * A loop whose {@code !end} has not been read yet.
+     */
+    private static final class Block {
+        final BatchAction opener;
+        final int lineNumber;
+        final List<BatchAction> actions = new ArrayList<>();
+
+        Block(BatchAction opener, int lineNumber) {
+            this.opener = opener;
+            this.lineNumber = lineNumber;
+        }
+    }
+}
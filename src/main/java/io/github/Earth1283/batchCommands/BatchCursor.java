@@ -0,0 +1,39 @@
+package io.github.Earth1283.batchCommands;
+
+/**
+ * The read position of a running batch. Cursors are only touched from the main thread.
+ */
+interface BatchCursor {
+
+    /**
+     * Returned by {@link #peek()} when the next action exists but has not been produced yet.
+     */
+    BatchAction PENDING = new BatchAction(0);
+
+    /**
+     * @return The next action without consuming it, {@link #PENDING}, or null once the batch is exhausted.
+     */
+    BatchAction peek();
+
+    /**
+     * Consumes the action last returned by {@link #peek()}.
+     */
+    void advance();
+
+    /**
+     * @return The number of commands removed by the security blacklist. Final once the cursor is exhausted.
+     */
+    int skippedCount();
+
+    /**
+     * @return The report of warnings that only became known while the batch was running, sent on
+     *         completion, or null if there is nothing to report.
+     */
+    LintReport report();
+
+    /**
+     * Releases any resources held by the cursor. Called when the run finishes or is cancelled.
+     */
+    default void close() {
+    }
+}
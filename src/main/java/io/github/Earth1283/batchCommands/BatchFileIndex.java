@@ -0,0 +1,143 @@
+package io.github.Earth1283.batchCommands;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A sorted, in-memory list of every file below the batches folder, including subfolders.
+ * Names are relative to the batches folder and use {@code /} as separator, e.g. {@code maintenance/daily.batch}.
+ * <p>
+ * The folder is scanned once; afterwards the {@link BatchFolderWatcher} keeps the index current.
+ * Entries are kept sorted by their lowercase name, so a prefix lookup is a range query on a
+ * skip list instead of a directory listing. Safe to use from any thread.
+ */
+public class BatchFileIndex {
+
+    private final Path root;
+    private final Set<String> reservedNames;
+    private final Logger logger;
+    // Lowercase name + '\0' + name, so names differing only in case both fit
+    private final NavigableMap<String, String> entries = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param reservedNames Lowercase names that {@code /filebatch} reads as subcommands; files named
+     *                      like one are reported, since they can only be run with {@code /filebatch run}.
+     */
+    public BatchFileIndex(Path root, Set<String> reservedNames, Logger logger) {
+        this.root = root.toAbsolutePath().normalize();
+        this.reservedNames = reservedNames;
+        this.logger = logger;
+    }
+
+    /**
+     * @return True if typing the file's name without extension after {@code /filebatch} runs a
+     *         subcommand instead of the file, e.g. for {@code status.batch}.
+     */
+    private static boolean isShadowed(String name, Set<String> reservedNames) {
+        if (name.indexOf('/') >= 0) {
+            return false;
+        }
+        int dot = name.lastIndexOf('.');
+        return reservedNames.contains((dot > 0 ? name.substring(0, dot) : name).toLowerCase());
+    }
+
+    private void add(String name) {
+        if (entries.put(key(name), name) == null && isShadowed(name, reservedNames)) {
+            logger.warning("Batch file '" + name + "' has the name of a /filebatch subcommand. Run it with"
+                    + " /filebatch run " + name + " or with its extension.");
+        }
+    }
+
+    /**
+     * Rescans the whole folder tree, e.g. on startup or after the watch service overflowed.
+     */
+    public void rebuild() {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(Files::isRegularFile).forEach(file -> names.add(relativeName(file)));
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Could not scan the batches folder", e);
+            return;
+        }
+
+        entries.clear();
+        for (String name : names) {
+            add(name);
+        }
+    }
+
+    /**
+     * Applies a change reported by the {@link BatchFolderWatcher}.
+     * @param path The absolute path of the changed file or folder, or null to rescan everything.
+     */
+    public void update(Path path) {
+        if (path == null) {
+            rebuild();
+            return;
+        }
+        if (!path.startsWith(root) || path.equals(root)) {
+            return;
+        }
+
+        String name = relativeName(path);
+        if (Files.isRegularFile(path)) {
+            add(name);
+        } else if (!Files.exists(path)) {
+            // A deleted file, or a deleted folder together with everything in it
+            entries.remove(key(name));
+            String folderPrefix = name + "/";
+            Iterator<Map.Entry<String, String>> it = prefixRange(folderPrefix).entrySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().getValue().startsWith(folderPrefix)) {
+                    it.remove();
+                }
+            }
+        }
+        // New folders are walked by the watcher, which reports their files one by one
+    }
+
+    /**
+     * Finds the batch files whose name starts with the given prefix, ignoring case.
+     * @param prefix The typed prefix, e.g. {@code main} or {@code maintenance/da}.
+     * @param extension The batch file extension; other files are skipped.
+     * @return The matching names in alphabetical order.
+     */
+    public List<String> complete(String prefix, String extension) {
+        List<String> matches = new ArrayList<>();
+        for (String name : prefixRange(prefix.replace(File.separatorChar, '/')).values()) {
+            if (name.toLowerCase().endsWith(extension)) {
+                matches.add(name);
+            }
+        }
+        return matches;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private NavigableMap<String, String> prefixRange(String prefix) {
+        String lower = prefix.toLowerCase();
+        return entries.subMap(lower, true, lower + Character.MAX_VALUE, true);
+    }
+
+    private String relativeName(Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase() + '\0' + name;
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.Earth1283.batchCommands;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * Watches the batches folder and all of its subfolders on a background thread and notifies
+ * listeners about changed files. Listeners receive the absolute path of the created, modified or
+ * deleted file or folder, or null if the watch service overflowed and every file must be
+ * considered changed. When a folder is created, each file already inside it is reported as well.
+ */
+public class BatchFolderWatcher implements AutoCloseable {
+
+    private final BatchCommands plugin;
+    private final Path folder;
+    private final List<Consumer<Path>> listeners = new CopyOnWriteArrayList<>();
+
+    private WatchService watchService;
+    private Thread thread;
+
+    public BatchFolderWatcher(BatchCommands plugin, Path folder) {
+        this.plugin = plugin;
+        this.folder = folder.toAbsolutePath().normalize();
+    }
+
+    public void addListener(Consumer<Path> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Registers the watch service and starts the watcher thread.
+     * If the file system does not support watching, listeners are simply never notified.
+     */
+    public void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerTree(folder, false);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not watch the batches folder for changes", e);
+            return;
+        }
+
+        thread = new Thread(this::run, "BatchCommands-FolderWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Folders created during the overflow are not watched yet; registering is idempotent
+                    try {
+                        registerTree(folder, false);
+                    } catch (IOException e) {
+                        plugin.getLogger().log(Level.WARNING, "Could not watch the batches folder for changes", e);
+                    }
+                    notifyListeners(null);
+                } else {
+                    Path path = dir.resolve((Path) event.context()).normalize();
+                    notifyListeners(path);
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                        try {
+                            registerTree(path, true);
+                        } catch (IOException e) {
+                            plugin.getLogger().log(Level.WARNING, "Could not watch new folder " + path, e);
+                        }
+                    }
+                }
+            }
+
+            // A subfolder's key becomes invalid when it is deleted; only stop once the root is gone
+            if (!key.reset() && dir.equals(folder)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Watches a folder and every folder below it.
+     * @param reportFiles True to notify listeners about the files found, which may have been
+     *                    created before the folder was registered.
+     */
+    private void registerTree(Path root, boolean reportFiles) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isDirectory(path)) {
+                    path.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.ENTRY_DELETE);
+                } else if (reportFiles) {
+                    files.add(path.normalize());
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        files.forEach(this::notifyListeners);
+    }
+
+    private void notifyListeners(Path path) {
+        for (Consumer<Path> listener : listeners) {
+            try {
+                listener.accept(path);
+            } catch (RuntimeException e) {
+                plugin.getLogger().log(Level.WARNING, "Batch folder listener failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {}
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
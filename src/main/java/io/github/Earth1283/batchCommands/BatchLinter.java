@@ -1,80 +1,212 @@
 package io.github.Earth1283.batchCommands;
 
-import org.bukkit.configuration.file.FileConfiguration;
-
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class BatchLinter {
 
-    private final BatchCommands plugin;
+    // Shared by all lint runs; its worker threads are daemons and exit when idle
+    private static final ForkJoinPool LINT_POOL = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
 
-    public BatchLinter(BatchCommands plugin) {
-        this.plugin = plugin;
-    }
+    private record IndexedCommands(Set<String> commands, SuggestionIndex index) {}
+
+    private volatile IndexedCommands indexedCommands;
+
+    /**
+     * Results of lines checked before, by their trimmed text. A result only depends on the line, the
+     * command set and the settings (which include the blacklist), so the memo belongs to one pair of
+     * them and is replaced as a whole once either changes.
+     */
+    private record LineMemo(Set<String> commands, LinterSettings settings, Map<String, LinterResult> results) {}
+
+    private volatile LineMemo lineMemo;
 
     public enum LintCheck {
         META_SYNTAX,
         UNKNOWN_META,
         BLACKLIST,
-        EXISTENCE
+        EXISTENCE,
+        CUSTOM_PATTERN
     }
 
     public static class LinterTimeoutException extends Exception {}
 
     public static class LinterResult {
         public final String warning;
+        /** The check that produced the warning, or null if there is none. */
+        public final LintCheck check;
         public final Map<LintCheck, Long> timings;
 
         public LinterResult(String warning, Map<LintCheck, Long> timings) {
+            this(warning, null, timings);
+        }
+
+        public LinterResult(String warning, LintCheck check, Map<LintCheck, Long> timings) {
             this.warning = warning;
+            this.check = check;
             this.timings = timings;
         }
     }
 
+    /**
+     * The combined result of checking many lines.
+     */
+    public static class BulkResult {
+        /** Warnings in line order. */
+        public final List<LintWarning> warnings;
+        public final EnumMap<LintCheck, Long> timings;
+        public final boolean timedOut;
+
+        BulkResult(List<LintWarning> warnings, EnumMap<LintCheck, Long> timings, boolean timedOut) {
+            this.warnings = warnings;
+            this.timings = timings;
+            this.timedOut = timedOut;
+        }
+    }
+
+    /**
+     * Checks many lines against the same command set, rules and deadline. Large inputs are split into
+     * chunks that are linted in parallel; warnings are still returned in line order and the per-check
+     * timings of all workers are summed. Once any chunk hits the deadline the others stop as well.
+     * No worker is still reading {@code lines} when this returns, so the caller may reuse the list.
+     * @param lines The parsed lines to check.
+     * @param lineNumbers The line number of each entry in {@code lines}.
+     * @param knownCommands A set of all known command aliases on the server (lowercase).
+     * @param settings The linter rules, check order and blacklist to apply.
+     * @param deadline The timestamp (ms) by which linting must finish.
+     * @return The warnings and timings of every line checked before the deadline.
+     */
+    public BulkResult checkAll(List<BatchAction> lines, int[] lineNumbers, Set<String> knownCommands, LinterSettings settings, long deadline) {
+        int chunkSize = Math.max(settings.parallelMinLines, lines.size() / (LINT_POOL.getParallelism() * 4) + 1);
+        AtomicBoolean stop = new AtomicBoolean(false);
+
+        if (!settings.parallel || lines.size() <= chunkSize) {
+            return checkRange(lines, lineNumbers, 0, lines.size(), knownCommands, settings, deadline, stop);
+        }
+
+        List<ForkJoinTask<BulkResult>> chunks = new ArrayList<>();
+        for (int from = 0; from < lines.size(); from += chunkSize) {
+            int start = from;
+            int end = Math.min(lines.size(), from + chunkSize);
+            chunks.add(LINT_POOL.submit(() -> checkRange(lines, lineNumbers, start, end, knownCommands, settings, deadline, stop)));
+        }
+
+        List<LintWarning> warnings = new ArrayList<>();
+        EnumMap<LintCheck, Long> timings = new EnumMap<>(LintCheck.class);
+        boolean timedOut = false;
+        for (ForkJoinTask<BulkResult> chunk : chunks) {
+            BulkResult result;
+            try {
+                result = chunk.get();
+            } catch (InterruptedException e) {
+                stopAll(chunks, stop);
+                Thread.currentThread().interrupt();
+                return new BulkResult(warnings, timings, true);
+            } catch (ExecutionException e) {
+                stopAll(chunks, stop);
+                throw new IllegalStateException("Linting failed", e.getCause());
+            }
+            warnings.addAll(result.warnings);
+            result.timings.forEach((check, time) -> timings.merge(check, time, Long::sum));
+            timedOut |= result.timedOut;
+        }
+        return new BulkResult(warnings, timings, timedOut);
+    }
+
+    /**
+     * Stops the remaining chunks and waits until none of them runs anymore. Cancelling is not enough,
+     * since a cancelled task counts as done while its worker may still be checking lines.
+     */
+    private static void stopAll(List<ForkJoinTask<BulkResult>> chunks, AtomicBoolean stop) {
+        stop.set(true);
+        for (ForkJoinTask<BulkResult> chunk : chunks) {
+            // Does not respond to interrupts; every chunk checks the flag before each line
+            chunk.quietlyJoin();
+        }
+    }
+
+    private BulkResult checkRange(List<BatchAction> lines, int[] lineNumbers, int from, int to, Set<String> knownCommands,
+                                  LinterSettings settings, long deadline, AtomicBoolean stop) {
+        List<LintWarning> warnings = new ArrayList<>();
+        EnumMap<LintCheck, Long> timings = new EnumMap<>(LintCheck.class);
+        for (int i = from; i < to; i++) {
+            if (stop.get()) {
+                return new BulkResult(warnings, timings, true);
+            }
+            try {
+                LinterResult result = check(lines.get(i), knownCommands, settings, deadline);
+                if (result.warning != null) {
+                    warnings.add(new LintWarning(null, lineNumbers[i], result.check, result.warning));
+                }
+                if (settings.debugMode) {
+                    result.timings.forEach((check, time) -> timings.merge(check, time, Long::sum));
+                }
+            } catch (LinterTimeoutException e) {
+                stop.set(true);
+                return new BulkResult(warnings, timings, true);
+            }
+        }
+        return new BulkResult(warnings, timings, false);
+    }
+
     /**
      * Checks a command line for issues.
      * @param line The command line to check.
      * @param knownCommands A set of all known command aliases on the server (lowercase).
-     * @param blacklist A list of blacklisted commands.
-     * @param order The order of checks to perform.
+     * @param settings The linter rules, check order and blacklist to apply.
      * @param deadline The timestamp (ms) by which linting must finish.
      * @return A LinterResult containing any warning and timing data.
      * @throws LinterTimeoutException if the deadline is exceeded.
      */
-    public LinterResult check(String line, Set<String> knownCommands, List<String> blacklist, List<LintCheck> order, long deadline) throws LinterTimeoutException {
-        FileConfiguration config = plugin.getLinterConfig();
-        Map<LintCheck, Long> timings = new EnumMap<>(LintCheck.class);
-
-        if (!config.getBoolean("enabled", true)) {
-            return new LinterResult(null, timings);
+    public LinterResult check(String line, Set<String> knownCommands, LinterSettings settings, long deadline) throws LinterTimeoutException {
+        BatchAction action = LineTokenizer.parse(line);
+        if (action == null) {
+            return new LinterResult(null, new EnumMap<>(LintCheck.class));
         }
+        return check(action, knownCommands, settings, deadline);
+    }
 
-        if (line.trim().isEmpty() || line.startsWith("#")) {
-            return new LinterResult(null, timings);
+    /**
+     * Checks a line that was already parsed by the {@link LineTokenizer}.
+     * @see #check(String, Set, LinterSettings, long)
+     */
+    LinterResult check(BatchAction action, Set<String> knownCommands, LinterSettings settings, long deadline) throws LinterTimeoutException {
+        if (!settings.enabled) {
+            return new LinterResult(null, new EnumMap<>(LintCheck.class));
+        }
+        if (settings.memoMaxLines <= 0) {
+            return evaluate(action, knownCommands, settings, deadline);
         }
 
-        String trimmed = line.trim();
-        boolean isMeta = trimmed.startsWith("!");
-        String cmdName = "";
-
-        if (!isMeta) {
-            String temp = trimmed;
-            if (temp.startsWith("/")) {
-                temp = temp.substring(1);
-            }
-            String[] parts = temp.split("\\s+");
-            if (parts.length > 0) {
-                cmdName = parts[0].toLowerCase();
-            } else {
-                return new LinterResult(null, timings);
+        // Batch files share most of their lines, so each distinct line is only checked once
+        Map<String, LinterResult> memo = memoFor(knownCommands, settings);
+        LinterResult result = memo.get(action.command);
+        if (result == null) {
+            result = evaluate(action, knownCommands, settings, deadline);
+            if (memo.size() >= settings.memoMaxLines) {
+                memo.clear(); // Start over instead of tracking which lines are used least
             }
+            // Lines found in the memo take no time, so their timings are empty
+            memo.put(action.command, new LinterResult(result.warning, result.check, Collections.emptyMap()));
         }
+        return result;
+    }
+
+    private LinterResult evaluate(BatchAction action, Set<String> knownCommands, LinterSettings settings, long deadline) throws LinterTimeoutException {
+        Map<LintCheck, Long> timings = new EnumMap<>(LintCheck.class);
+        boolean isMeta = action.isMeta();
+        String cmdName = action.name;
 
-        for (LintCheck check : order) {
+        for (LintCheck check : settings.order) {
             if (System.currentTimeMillis() > deadline) {
                 throw new LinterTimeoutException();
             }
@@ -84,45 +216,43 @@ public class BatchLinter {
 
             switch (check) {
                 case META_SYNTAX:
-                    if (isMeta && trimmed.toLowerCase().startsWith("!sleep")) {
-                        if (config.getBoolean("rules.warn-invalid-syntax", true)) {
-                            String[] parts = trimmed.split("\\s+");
-                            if (parts.length < 2) {
-                                warning = "Invalid syntax for !sleep. Usage: !sleep <seconds>";
-                            } else {
-                                try {
-                                    Double.parseDouble(parts[1]);
-                                } catch (NumberFormatException e) {
-                                    warning = "Invalid duration for !sleep: '" + parts[1] + "'. Expected a number.";
-                                }
-                            }
+                    if (action.type == BatchAction.Type.INVALID_SLEEP && settings.warnInvalidSyntax) {
+                        if (action.argument == null) {
+                            warning = "Invalid syntax for !sleep. Usage: !sleep <seconds>";
+                        } else {
+                            warning = "Invalid duration for !sleep: '" + action.argument + "'. Expected a number.";
+                        }
+                    } else if (action.type == BatchAction.Type.INCLUDE && action.argument == null && settings.warnInvalidSyntax) {
+                        warning = "Invalid syntax for !include. Usage: !include <file>";
+                    } else if (action.opensLoop() && !action.isValidLoop() && settings.warnInvalidSyntax) {
+                        if (action.type == BatchAction.Type.REPEAT && action.argument == null) {
+                            warning = "Invalid syntax for !repeat. Usage: !repeat <count>";
+                        } else if (action.type == BatchAction.Type.REPEAT) {
+                            warning = "Invalid count for !repeat: '" + action.argument + "'. Expected a positive whole number.";
+                        } else if (action.argument == null) {
+                            warning = "Invalid syntax for !foreach. Usage: !foreach <player|world>";
+                        } else {
+                            warning = "Unknown target for !foreach: '" + action.argument + "'. Expected player or world.";
                         }
                     }
                     break;
 
                 case UNKNOWN_META:
-                    if (isMeta && !trimmed.toLowerCase().startsWith("!sleep")) {
-                        if (config.getBoolean("rules.warn-unknown-meta", true)) {
-                            warning = "Unknown meta-command '" + trimmed.split("\\s+")[0] + "'. Supported: !sleep";
-                        }
+                    if (action.type == BatchAction.Type.UNKNOWN_META && settings.warnUnknownMeta) {
+                        warning = "Unknown meta-command '" + action.command.substring(action.nameStart, action.nameEnd) + "'. Supported: !sleep, !include, !repeat, !foreach, !end";
                     }
                     break;
 
                 case BLACKLIST:
-                    if (!isMeta && config.getBoolean("rules.warn-on-blacklisted", true)) {
-                        for (String blocked : blacklist) {
-                            if (cmdName.equalsIgnoreCase(blocked)) {
-                                warning = "Command '" + cmdName + "' is blacklisted.";
-                                break;
-                            }
-                        }
+                    if (!isMeta && settings.warnOnBlacklisted && settings.blacklist.contains(cmdName)) {
+                        warning = "Command '" + cmdName + "' is blacklisted.";
                     }
                     break;
 
                 case EXISTENCE:
-                    if (!isMeta && config.getBoolean("rules.check-command-existence", true)) {
+                    if (!isMeta && settings.checkCommandExistence) {
                         if (!knownCommands.contains(cmdName)) {
-                            if (config.getBoolean("rules.suggest-alternatives", true)) {
+                            if (settings.suggestAlternatives) {
                                 String suggestion = findClosestMatch(cmdName, knownCommands);
                                 if (suggestion != null) {
                                     warning = "Unknown command '" + cmdName + "'. Did you mean '" + suggestion + "'?";
@@ -135,57 +265,50 @@ public class BatchLinter {
                         }
                     }
                     break;
+
+                case CUSTOM_PATTERN:
+                    CustomPatternMatcher.Rule rule = settings.customPatterns.match(action.command);
+                    if (rule != null) {
+                        warning = rule.blocking ? rule.message + " (blocked)" : rule.message;
+                    }
+                    break;
             }
 
             timings.put(check, System.nanoTime() - start);
             
             if (warning != null) {
-                return new LinterResult(warning, timings);
+                return new LinterResult(warning, check, timings);
             }
         }
 
         return new LinterResult(null, timings);
     }
 
-    private String findClosestMatch(String target, Collection<String> candidates) {
-        String bestMatch = null;
-        int minDistance = Integer.MAX_VALUE;
-
-        for (String candidate : candidates) {
-            int distance = computeLevenshteinDistance(target, candidate);
-            if (distance < minDistance) {
-                minDistance = distance;
-                bestMatch = candidate;
-            }
-        }
-
-        // Threshold: Only suggest if distance is small enough (e.g., <= 3 or 30% of length)
-        if (minDistance > 0 && minDistance <= 3) {
-            return bestMatch;
+    /**
+     * Returns the line memo for a command set and settings, starting an empty one when either changes.
+     */
+    private Map<String, LinterResult> memoFor(Set<String> knownCommands, LinterSettings settings) {
+        LineMemo current = lineMemo;
+        if (current == null || current.commands() != knownCommands || current.settings() != settings) {
+            current = new LineMemo(knownCommands, settings, new ConcurrentHashMap<>());
+            lineMemo = current;
         }
-        return null;
+        return current.results();
     }
 
-    // Standard Levenshtein Distance implementation
-    private int computeLevenshteinDistance(String lhs, String rhs) {
-        int[][] distance = new int[lhs.length() + 1][rhs.length() + 1];
-
-        for (int i = 0; i <= lhs.length(); i++)
-            distance[i][0] = i;
-        for (int j = 1; j <= rhs.length(); j++)
-            distance[0][j] = j;
-
-        for (int i = 1; i <= lhs.length(); i++)
-            for (int j = 1; j <= rhs.length(); j++)
-                distance[i][j] = minimum(
-                        distance[i - 1][j] + 1,
-                        distance[i][j - 1] + 1,
-                        distance[i - 1][j - 1] + ((lhs.charAt(i - 1) == rhs.charAt(j - 1)) ? 0 : 1));
-
-        return distance[lhs.length()][rhs.length()];
+    private String findClosestMatch(String target, Set<String> candidates) {
+        return indexFor(candidates).closest(target);
     }
 
-    private int minimum(int a, int b, int c) {
-        return Math.min(Math.min(a, b), c);
+    /**
+     * Returns the suggestion index for a command set, building it only when the set changes.
+     */
+    private SuggestionIndex indexFor(Set<String> knownCommands) {
+        IndexedCommands current = indexedCommands;
+        if (current == null || current.commands() != knownCommands) {
+            current = new IndexedCommands(knownCommands, SuggestionIndex.build(knownCommands));
+            indexedCommands = current;
+        }
+        return current.index();
     }
 }
@@ -0,0 +1,101 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.command.CommandSender;
+
+/**
+ * A single execution of a batch file, tracked by the {@link BatchRunManager}.
+ * Only accessed from the main thread.
+ */
+final class BatchRun {
+
+    enum State {
+        /** Waiting for a free slot under the concurrency cap. */
+        QUEUED,
+        /** Dispatching commands. */
+        RUNNING,
+        /** Waiting for a !sleep to finish. */
+        SLEEPING,
+        /** Paused by a user; resumes into {@link #resumeState}. */
+        PAUSED,
+        COMPLETED,
+        CANCELLED
+    }
+
+    final int id;
+    final CommandSender sender;
+    final String fileName;
+    final SegmentCursor cursor;
+    final long createdAt = System.currentTimeMillis();
+
+    State state = State.QUEUED;
+    State resumeState = State.QUEUED;
+    int executed = 0;
+    /** Main-thread time spent dispatching this run's commands. */
+    long dispatchNanos = 0;
+
+    /** Steps taken by the cursor, counting sleeps and lines skipped on resume. */
+    long position = 0;
+    /** Steps to skip without dispatching them, to resume an interrupted run. */
+    long resumeFrom = 0;
+    /** The run's key in the {@link RunJournal}, or 0 if it is not journaled. */
+    long journalKey = 0;
+    /** The last position passed to the journal. */
+    long journaledPosition = 0;
+    /** True once the step of the first {@code !foreach} was passed to the journal. */
+    boolean journaledForeach = false;
+
+    /** Manager tick at which a tick-mode sleep ends. */
+    long wakeTick = -1;
+    /** {@link System#nanoTime()} at which a realtime sleep ends. */
+    long wakeAtNanos = -1;
+
+    BatchRun(int id, CommandSender sender, String fileName, SegmentCursor cursor) {
+        this.id = id;
+        this.sender = sender;
+        this.fileName = fileName;
+        this.cursor = cursor;
+    }
+
+    boolean isFinished() {
+        return state == State.COMPLETED || state == State.CANCELLED;
+    }
+
+    /**
+     * @return True if the run has started and therefore counts against the concurrency cap.
+     */
+    boolean holdsSlot() {
+        State effective = state == State.PAUSED ? resumeState : state;
+        return effective == State.RUNNING || effective == State.SLEEPING;
+    }
+
+    /**
+     * @return The number of steps that are done. A sleep that has not ended yet is not, so a resumed
+     *         run waits for it again.
+     */
+    long completedSteps() {
+        State effective = state == State.PAUSED ? resumeState : state;
+        return effective == State.SLEEPING ? position - 1 : position;
+    }
+
+    void pause() {
+        resumeState = state;
+        state = State.PAUSED;
+    }
+
+    void resume() {
+        state = resumeState;
+    }
+
+    /**
+     * Ends a sleep. A run paused while sleeping stays paused, but resumes straight into running.
+     */
+    void wake() {
+        wakeTick = -1;
+        wakeAtNanos = -1;
+        if (state == State.SLEEPING) {
+            state = State.RUNNING;
+        } else if (state == State.PAUSED && resumeState == State.SLEEPING) {
+            resumeState = State.RUNNING;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package io.github.Earth1283.batchCommands;
+
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Owns every running batch and dispatches their commands from a single per-tick task.
+ * <p>
+ * Runs are identified by a numeric ID and can be paused, resumed and cancelled. At most
+ * {@code runs.max-concurrent} runs are active at once; further runs wait in a queue.
+ * Within a tick, active runs take turns one command at a time, so a huge batch cannot
+ * starve the others, and the dispatch limits of {@code dispatch.*} apply to all of them together.
+ * All methods must be called on the main thread.
+ */
+public class BatchRunManager {
+
+    private final BatchCommands plugin;
+    private final Map<Integer, BatchRun> runs = new LinkedHashMap<>();
+    // Copy of the run IDs for tab completion, which on Folia runs on other threads
+    private volatile List<Integer> runIds = List.of();
+    private final DispatchStats stats = new DispatchStats();
+    private final DirectDispatcher dispatcher;
+    private final AdaptiveThrottle throttle;
+
+    // Sleeping runs by the tick or nanoTime() at which they wake, checked once per tick.
+    // Entries of runs that were cancelled stay until their deadline and are then ignored.
+    private final PriorityQueue<Sleeper> tickSleepers = new PriorityQueue<>(Comparator.comparingLong(Sleeper::deadline));
+    private final PriorityQueue<Sleeper> realtimeSleepers = new PriorityQueue<>(Comparator.comparingLong(Sleeper::deadline));
+
+    private int nextId = 1;
+    private TaskScheduler.Task tickTask;
+    private long currentTick = 0;
+    private int rotation = 0;
+
+    private record Sleeper(long deadline, BatchRun run) {}
+
+    public BatchRunManager(BatchCommands plugin) {
+        this.plugin = plugin;
+        this.dispatcher = new DirectDispatcher(plugin);
+        this.throttle = new AdaptiveThrottle(plugin.getLogger());
+    }
+
+    /**
+     * Registers a new run. It starts on the next tick, or is queued if the concurrency cap is reached.
+     * @param sourceHash The hash of the batch file and its includes, recorded in the run journal, or null if unknown.
+     * @param resumeFrom The number of steps to skip, to resume an interrupted run; 0 to start at the top.
+     * @return The new run.
+     */
+    BatchRun submit(CommandSender sender, String fileName, byte[] sourceHash, BatchCursor cursor, long resumeFrom) {
+        // Included files are stepped into as the run reaches them, never copied
+        BatchRun run = new BatchRun(nextId++, sender, fileName, new SegmentCursor(cursor));
+        run.resumeFrom = resumeFrom;
+        RunJournal journal = plugin.getRunJournal();
+        if (journal != null) {
+            run.journalKey = journal.start(fileName, sourceHash, sender.getName());
+        }
+        runs.put(run.id, run);
+        runIds = List.copyOf(runs.keySet());
+        promoteQueued();
+
+        plugin.sendMessage(sender, run.state == BatchRun.State.QUEUED ? "run-queued" : "run-started",
+                Placeholder.unparsed("id", String.valueOf(run.id)),
+                Placeholder.unparsed("filename", fileName));
+
+        if (tickTask == null) {
+            tickTask = plugin.getTaskScheduler().runGlobalTimer(this::tick, 1L, 1L);
+        }
+        return run;
+    }
+
+    /**
+     * @return All runs that have not finished yet, oldest first.
+     */
+    Collection<BatchRun> getRuns() {
+        return Collections.unmodifiableCollection(runs.values());
+    }
+
+    /**
+     * @return The controller of the adaptive dispatch mode.
+     */
+    AdaptiveThrottle getThrottle() {
+        return throttle;
+    }
+
+    /**
+     * @return The IDs of all runs. Unlike the other methods, safe to call from any thread.
+     */
+    List<Integer> getRunIds() {
+        return runIds;
+    }
+
+    /**
+     * @return The active run with the given ID, or null if there is none.
+     */
+    BatchRun getRun(int id) {
+        return runs.get(id);
+    }
+
+    /**
+     * @return The dispatch statistics collected since the plugin was enabled or they were reset.
+     */
+    DispatchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return True if the run was paused, false if it was already paused.
+     */
+    boolean pause(BatchRun run) {
+        if (run.state == BatchRun.State.PAUSED) {
+            return false;
+        }
+        run.pause();
+        return true;
+    }
+
+    /**
+     * @return True if the run was resumed, false if it was not paused.
+     */
+    boolean resume(BatchRun run) {
+        if (run.state != BatchRun.State.PAUSED) {
+            return false;
+        }
+        run.resume();
+        promoteQueued();
+        return true;
+    }
+
+    /**
+     * Stops a run for good. Commands that were already dispatched are not undone.
+     */
+    void cancel(BatchRun run) {
+        release(run, BatchRun.State.CANCELLED);
+        endJournal(run);
+        promoteQueued();
+    }
+
+    /**
+     * Cancels every run without notifying anyone. Called when the plugin is disabled.
+     * The runs stay in the journal, so they can be resumed after the restart.
+     */
+    public void shutdown() {
+        recordProgress();
+        for (BatchRun run : new ArrayList<>(runs.values())) {
+            release(run, BatchRun.State.CANCELLED);
+        }
+        tickSleepers.clear();
+        realtimeSleepers.clear();
+        if (tickTask != null) {
+            tickTask.cancel();
+            tickTask = null;
+        }
+    }
+
+    private void tick() {
+        currentTick++;
+
+        while (!tickSleepers.isEmpty() && tickSleepers.peek().deadline <= currentTick) {
+            Sleeper sleeper = tickSleepers.poll();
+            if (!sleeper.run.isFinished() && sleeper.run.wakeTick == sleeper.deadline) {
+                sleeper.run.wake();
+            }
+        }
+        long now = System.nanoTime();
+        while (!realtimeSleepers.isEmpty() && realtimeSleepers.peek().deadline - now <= 0) {
+            Sleeper sleeper = realtimeSleepers.poll();
+            if (!sleeper.run.isFinished() && sleeper.run.wakeAtNanos == sleeper.deadline) {
+                sleeper.run.wake();
+            }
+        }
+        promoteQueued();
+
+        BatchSettings settings = plugin.getSettings();
+        if (settings.adaptiveDispatch) {
+            throttle.update(settings);
+        }
+
+        long start = System.nanoTime();
+        if (executeBatches() > 0 && settings.statsEnabled) {
+            stats.recordTick(System.nanoTime() - start);
+        }
+        recordProgress();
+
+        if (runs.isEmpty()) {
+            tickTask.cancel();
+            tickTask = null;
+        }
+    }
+
+    /**
+     * Dispatches commands from all running batches, one command per run per round, until every run
+     * is waiting or the tick's budget is used up.
+     * @return The number of commands dispatched.
+     */
+    private int executeBatches() {
+        List<BatchRun> running = new ArrayList<>();
+        for (BatchRun run : runs.values()) {
+            if (run.state == BatchRun.State.RUNNING) {
+                running.add(run);
+            }
+        }
+        if (running.isEmpty()) {
+            return 0;
+        }
+
+        // Start each tick with a different run so the first slot is shared fairly too
+        int start = rotation++ % running.size();
+        Deque<BatchRun> turns = new ArrayDeque<>(running.size());
+        for (int i = 0; i < running.size(); i++) {
+            turns.add(running.get((start + i) % running.size()));
+        }
+
+        BatchSettings settings = plugin.getSettings();
+        boolean budgeted = settings.budgetedDispatch;
+        boolean adaptive = settings.adaptiveDispatch;
+        boolean recordStats = settings.statsEnabled;
+        boolean direct = settings.directExecute;
+        if (adaptive && throttle.isPaused()) {
+            return 0; // Below the TPS floor; sleeps keep counting down, commands wait
+        }
+        double costLimit = adaptive ? throttle.limit() : Double.MAX_VALUE;
+        double costThisTick = 0;
+        long tickStart = System.nanoTime();
+        int dispatchedThisTick = 0;
+
+        while (!turns.isEmpty()) {
+            // Always dispatch at least one command per tick so batches keep making progress
+            if (budgeted && dispatchedThisTick > 0
+                    && (dispatchedThisTick >= settings.maxCommandsPerTick || costThisTick >= costLimit
+                        || System.nanoTime() - tickStart >= settings.tickBudgetNanos)) {
+                return dispatchedThisTick; // Budget exhausted, resume on the next tick
+            }
+
+            BatchRun run = turns.poll();
+            if (run.state != BatchRun.State.RUNNING) {
+                // Paused or cancelled by a command dispatched earlier in this tick
+                continue;
+            }
+            BatchAction action = run.cursor.peek();
+            if (action == null) {
+                complete(run);
+            } else if (action == BatchCursor.PENDING) {
+                // Still being read, try again on the next tick
+            } else if (run.position < run.resumeFrom) {
+                // Resuming an interrupted run: replay the steps it already took, sleeps included
+                run.cursor.advance();
+                run.position++;
+                turns.add(run);
+            } else if (action.type == BatchAction.Type.SLEEP) {
+                run.cursor.advance();
+                run.position++;
+                scheduleSleep(run, action.seconds);
+            } else {
+                run.cursor.advance();
+                run.position++;
+                long dispatchStart = System.nanoTime();
+                dispatcher.dispatch(action, direct);
+                long elapsed = System.nanoTime() - dispatchStart;
+                run.dispatchNanos += elapsed;
+                if (recordStats) {
+                    stats.recordCommand(action.name, elapsed);
+                }
+                run.executed++;
+                dispatchedThisTick++;
+                if (adaptive) {
+                    costThisTick += settings.commandWeight(action.name);
+                }
+                if (run.state == BatchRun.State.RUNNING) {
+                    turns.add(run);
+                }
+            }
+        }
+        return dispatchedThisTick;
+    }
+
+    private void scheduleSleep(BatchRun run, double seconds) {
+        run.state = BatchRun.State.SLEEPING;
+
+        if (plugin.getSettings().realtimeTimer) {
+            // No thread waits for the sleep; the tick loop wakes the run once the deadline has passed
+            run.wakeAtNanos = System.nanoTime() + (long) (seconds * 1_000_000_000L);
+            realtimeSleepers.add(new Sleeper(run.wakeAtNanos, run));
+        } else {
+            // Default to ticks (20 ticks per second); a zero-tick sleep still yields until the next tick
+            long delayTicks = (long) (seconds * 20);
+            run.wakeTick = currentTick + Math.max(1L, delayTicks);
+            tickSleepers.add(new Sleeper(run.wakeTick, run));
+        }
+    }
+
+    private void promoteQueued() {
+        int cap = plugin.getSettings().maxConcurrentRuns;
+        int active = 0;
+        for (BatchRun run : runs.values()) {
+            if (run.holdsSlot()) {
+                active++;
+            }
+        }
+        for (BatchRun run : runs.values()) {
+            if (cap > 0 && active >= cap) {
+                return;
+            }
+            if (run.state == BatchRun.State.QUEUED) {
+                run.state = BatchRun.State.RUNNING;
+                active++;
+            }
+        }
+    }
+
+    /**
+     * Hands the position of every run that made progress to the journal, which writes them in the background.
+     * The step of a run's first {@code !foreach} is handed over once.
+     */
+    private void recordProgress() {
+        RunJournal journal = plugin.getRunJournal();
+        if (journal == null) {
+            return;
+        }
+        for (BatchRun run : runs.values()) {
+            long completed = run.completedSteps();
+            if (run.journalKey != 0 && completed != run.journaledPosition) {
+                journal.progress(run.journalKey, completed);
+                run.journaledPosition = completed;
+            }
+            long foreachStep = run.cursor.foreachStep();
+            if (run.journalKey != 0 && foreachStep >= 0 && !run.journaledForeach) {
+                journal.foreach(run.journalKey, foreachStep);
+                run.journaledForeach = true;
+            }
+        }
+    }
+
+    private void endJournal(BatchRun run) {
+        RunJournal journal = plugin.getRunJournal();
+        if (journal != null && run.journalKey != 0) {
+            journal.end(run.journalKey);
+        }
+    }
+
+    private void complete(BatchRun run) {
+        release(run, BatchRun.State.COMPLETED);
+        endJournal(run);
+        promoteQueued();
+
+        CommandSender sender = run.sender;
+        LintReport report = run.cursor.report();
+        if (report != null) {
+            sender.sendMessage(report.summary());
+        }
+        int skippedCount = run.cursor.skippedCount();
+        if (skippedCount > 0) {
+            plugin.sendMessage(sender, "skipped-dangerous",
+                    Placeholder.unparsed("count", String.valueOf(skippedCount)),
+                    Placeholder.unparsed("filename", run.fileName));
+        }
+        plugin.sendMessage(sender, "success",
+                Placeholder.unparsed("count", String.valueOf(run.executed)),
+                Placeholder.unparsed("filename", run.fileName));
+    }
+
+    private void release(BatchRun run, BatchRun.State finalState) {
+        run.state = finalState;
+        run.cursor.close();
+        runs.remove(run.id);
+        runIds = List.copyOf(runs.keySet());
+        if (plugin.getSettings().statsEnabled) {
+            stats.recordRun(run, plugin.getSettings().statsRecentRuns);
+        }
+    }
+}
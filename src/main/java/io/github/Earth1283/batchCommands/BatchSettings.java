@@ -0,0 +1,168 @@
+package io.github.Earth1283.batchCommands;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * An immutable, typed snapshot of {@code config.yml} and {@code linter.yml}.
+ * A new snapshot is built on startup and by {@code /filebatch reload} and swapped in atomically,
+ * so hot paths read plain fields instead of walking the YAML tree.
+ */
+public final class BatchSettings {
+
+    public final String batchFolder;
+    public final String fileExtension;
+    public final boolean realtimeTimer;
+
+    public final boolean removeDangerous;
+
+    public final boolean budgetedDispatch;
+    public final boolean adaptiveDispatch;
+    public final long tickBudgetNanos;
+    public final int maxCommandsPerTick;
+    public final double adaptiveTargetMspt;
+    public final double adaptiveMinTps;
+    public final int adaptiveMinPerTick;
+    public final int adaptiveIntervalTicks;
+    private final Map<String, Double> commandWeights;
+    public final boolean directExecute;
+
+    public final int maxConcurrentRuns;
+
+    public final boolean journalEnabled;
+    public final long journalCommitIntervalMillis;
+
+    public final int cacheMaxEntries;
+    public final long cacheMaxActions;
+
+    public final long streamingMinBytes;
+    public final int streamingChunkSize;
+    public final int streamingQueueChunks;
+    public final int streamingMaxWarnings;
+    public final long streamingMaxLoopLines;
+
+    public final boolean statsEnabled;
+    public final int statsRecentRuns;
+
+    public final int reportMaxGroups;
+    public final int reportMaxLineNumbers;
+    public final boolean reportWriteFiles;
+    public final int reportMaxFiles;
+
+    public final LinterSettings linter;
+
+    private final Map<String, MessageTemplate> messages;
+
+    private BatchSettings(FileConfiguration config, FileConfiguration linterConfig, MiniMessage miniMessage, Logger logger) {
+        this.batchFolder = config.getString("settings.batch-folder", "batches");
+        this.fileExtension = config.getString("settings.file-extension", ".batch");
+        this.realtimeTimer = "realtime".equalsIgnoreCase(config.getString("settings.timer-mode", "ticks"));
+
+        this.removeDangerous = config.getBoolean("security.remove-dangerous-commands", true);
+
+        String dispatchMode = config.getString("dispatch.mode", "instant");
+        this.adaptiveDispatch = "adaptive".equalsIgnoreCase(dispatchMode);
+        // Adaptive dispatch never exceeds the budgeted limits either
+        this.budgetedDispatch = adaptiveDispatch || "budgeted".equalsIgnoreCase(dispatchMode);
+        this.tickBudgetNanos = config.getLong("dispatch.tick-budget-ns", 5_000_000L);
+        this.maxCommandsPerTick = config.getInt("dispatch.max-commands-per-tick", 200);
+        this.adaptiveTargetMspt = config.getDouble("dispatch.adaptive.target-mspt", 40);
+        this.adaptiveMinTps = config.getDouble("dispatch.adaptive.min-tps", 15);
+        this.adaptiveMinPerTick = Math.max(1, config.getInt("dispatch.adaptive.min-commands-per-tick", 1));
+        this.adaptiveIntervalTicks = Math.max(1, config.getInt("dispatch.adaptive.adjust-interval-ticks", 20));
+
+        Map<String, Double> weights = new HashMap<>();
+        ConfigurationSection weightSection = config.getConfigurationSection("dispatch.adaptive.weights");
+        if (weightSection != null) {
+            for (String name : weightSection.getKeys(false)) {
+                weights.put(name.toLowerCase(), Math.max(0, weightSection.getDouble(name, 1)));
+            }
+        }
+        this.commandWeights = Collections.unmodifiableMap(weights);
+        this.directExecute = config.getBoolean("dispatch.direct-execute", true);
+
+        this.maxConcurrentRuns = config.getInt("runs.max-concurrent", 8);
+
+        this.journalEnabled = config.getBoolean("journal.enabled", true);
+        this.journalCommitIntervalMillis = Math.max(1, config.getLong("journal.commit-interval-ms", 1000));
+
+        this.cacheMaxEntries = config.getInt("cache.max-entries", 64);
+        this.cacheMaxActions = config.getLong("cache.max-actions", 200000);
+
+        long minSizeKb = config.getLong("streaming.min-file-size-kb", 4096);
+        this.streamingMinBytes = minSizeKb < 0 ? -1 : minSizeKb * 1024;
+        this.streamingChunkSize = config.getInt("streaming.chunk-size", 1024);
+        this.streamingQueueChunks = config.getInt("streaming.queue-chunks", 8);
+        this.streamingMaxWarnings = config.getInt("streaming.max-warnings", 100);
+        this.streamingMaxLoopLines = config.getLong("streaming.max-loop-lines", 100000);
+
+        this.statsEnabled = config.getBoolean("stats.enabled", true);
+        this.statsRecentRuns = config.getInt("stats.recent-runs", 20);
+
+        this.reportMaxGroups = Math.max(0, config.getInt("reports.max-groups", 8));
+        this.reportMaxLineNumbers = Math.max(0, config.getInt("reports.max-line-numbers", 5));
+        this.reportWriteFiles = config.getBoolean("reports.write-files", true);
+        this.reportMaxFiles = Math.max(0, config.getInt("reports.max-files", 5));
+
+        this.linter = LinterSettings.load(linterConfig, config.getStringList("security.command-blacklist"), logger);
+
+        // Messages missing from an older config.yml fall back to the defaults bundled in the jar
+        Set<String> keys = new LinkedHashSet<>();
+        collectKeys(config, keys);
+        if (config.getDefaults() != null) {
+            collectKeys(config.getDefaults(), keys);
+        }
+        keys.remove("prefix");
+
+        Map<String, MessageTemplate> messages = new HashMap<>();
+        Component prefix = miniMessage.deserialize(config.getString("messages.prefix", ""));
+        for (String key : keys) {
+            messages.put(key, new MessageTemplate(miniMessage, prefix, config.getString("messages." + key, "")));
+        }
+        this.messages = Collections.unmodifiableMap(messages);
+    }
+
+    private static void collectKeys(ConfigurationSection root, Set<String> keys) {
+        ConfigurationSection section = root.getConfigurationSection("messages");
+        if (section != null) {
+            keys.addAll(section.getKeys(false));
+        }
+    }
+
+    static BatchSettings load(FileConfiguration config, FileConfiguration linterConfig, Logger logger) {
+        return new BatchSettings(config, linterConfig, MiniMessage.miniMessage(), logger);
+    }
+
+    /**
+     * Gets the cost of a command for adaptive dispatch.
+     * @param name The lowercase command name, e.g. {@code fill} or {@code minecraft:fill}.
+     * @return The configured weight, or 1 if none is configured. A namespaced name without a weight
+     *         of its own uses the weight of the plain name.
+     */
+    double commandWeight(String name) {
+        Double weight = commandWeights.get(name);
+        if (weight == null) {
+            int colon = name.indexOf(':');
+            weight = colon < 0 ? null : commandWeights.get(name.substring(colon + 1));
+        }
+        return weight == null ? 1.0 : weight;
+    }
+
+    /**
+     * Gets the pre-parsed template for a message key.
+     * @param key The key below {@code messages} in config.yml.
+     * @return The template, or null if the message is not configured.
+     */
+    MessageTemplate message(String key) {
+        return messages.get(key);
+    }
+}
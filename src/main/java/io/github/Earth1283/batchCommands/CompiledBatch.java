@@ -0,0 +1,37 @@
+package io.github.Earth1283.batchCommands;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of reading, parsing and linting a batch file.
+ * Immutable, so a single instance can be cached and executed any number of times.
+ */
+final class CompiledBatch {
+
+    final List<BatchAction> actions;
+    final List<LintWarning> warnings;
+    final Map<BatchLinter.LintCheck, Long> timings;
+    final List<String> invalidSleepLines;
+    final int skippedCount;
+    /** The versions of every file included directly or indirectly; the batch is stale once one of them changes. */
+    final List<BatchCache.Key> dependencies;
+
+    CompiledBatch(List<BatchAction> actions, List<LintWarning> warnings, EnumMap<BatchLinter.LintCheck, Long> timings,
+                  List<String> invalidSleepLines, int skippedCount) {
+        this(actions, warnings, timings, invalidSleepLines, skippedCount, List.of());
+    }
+
+    CompiledBatch(List<BatchAction> actions, List<LintWarning> warnings, EnumMap<BatchLinter.LintCheck, Long> timings,
+                  List<String> invalidSleepLines, int skippedCount, Collection<BatchCache.Key> dependencies) {
+        this.actions = List.copyOf(actions);
+        this.warnings = List.copyOf(warnings);
+        this.timings = Collections.unmodifiableMap(new EnumMap<>(timings));
+        this.invalidSleepLines = List.copyOf(invalidSleepLines);
+        this.skippedCount = skippedCount;
+        this.dependencies = List.copyOf(dependencies);
+    }
+}
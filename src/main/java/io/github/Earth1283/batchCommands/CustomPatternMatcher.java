@@ -0,0 +1,432 @@
+package io.github.Earth1283.batchCommands;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches command lines against the {@code custom-patterns} rules of linter.yml.
+ * <p>
+ * Every rule is compiled once per configuration load. Each rule also has a literal that any
+ * matching line must contain, either configured or derived from the regex. A single Aho-Corasick
+ * pass over the line finds which literals occur, and only the rules whose literal was found
+ * (plus the few rules without one) run their regex. Checking a line therefore costs one scan
+ * plus a handful of regex matches, however many rules are configured.
+ */
+final class CustomPatternMatcher {
+
+    static final CustomPatternMatcher EMPTY = new CustomPatternMatcher(List.of());
+
+    /**
+     * A single configured rule.
+     */
+    static final class Rule {
+        final Pattern pattern;
+        final String message;
+        final boolean blocking;
+        /** Lowercase literal every matching line contains, or null if none is known. */
+        final String literal;
+
+        Rule(Pattern pattern, String message, boolean blocking, String literal) {
+            this.pattern = pattern;
+            this.message = message;
+            this.blocking = blocking;
+            this.literal = literal;
+        }
+    }
+
+    private static final class Node {
+        final Map<Character, Node> next = new HashMap<>();
+        Node fail;
+        /** Indices of the rules whose literal ends at this node, including via fail links. */
+        int[] rules = new int[0];
+    }
+
+    private final List<Rule> rules;
+    private final Node root = new Node();
+    private final int[] alwaysCandidates;
+    private final boolean hasBlockingRules;
+
+    private CustomPatternMatcher(List<Rule> rules) {
+        this.rules = rules;
+
+        List<Integer> always = new ArrayList<>();
+        boolean blocking = false;
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            blocking |= rule.blocking;
+            if (rule.literal == null) {
+                always.add(i);
+            } else {
+                insert(rule.literal, i);
+            }
+        }
+        this.alwaysCandidates = always.stream().mapToInt(Integer::intValue).toArray();
+        this.hasBlockingRules = blocking;
+        buildFailureLinks();
+    }
+
+    /**
+     * Compiles the rules of the {@code custom-patterns} list. Entries are either plain regex strings
+     * (warnings with a generic message) or maps with {@code pattern}, {@code message},
+     * {@code severity} ({@code warn} or {@code block}) and an optional {@code literal}.
+     * Invalid entries are logged and skipped.
+     */
+    static CustomPatternMatcher load(List<?> entries, Logger logger) {
+        if (entries == null || entries.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<Rule> rules = new ArrayList<>();
+        for (Object entry : entries) {
+            String regex;
+            String message = null;
+            String severity = "warn";
+            String literal = null;
+
+            if (entry instanceof String) {
+                regex = (String) entry;
+            } else if (entry instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) entry;
+                regex = map.get("pattern") == null ? null : String.valueOf(map.get("pattern"));
+                message = map.get("message") == null ? null : String.valueOf(map.get("message"));
+                severity = map.get("severity") == null ? severity : String.valueOf(map.get("severity"));
+                literal = map.get("literal") == null ? null : String.valueOf(map.get("literal"));
+            } else {
+                continue;
+            }
+
+            if (regex == null || regex.isEmpty()) {
+                logger.warning("Ignoring custom pattern without a 'pattern': " + entry);
+                continue;
+            }
+
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                logger.warning("Ignoring invalid custom pattern '" + regex + "': " + e.getDescription());
+                continue;
+            }
+
+            if (message == null) {
+                message = "Line matches custom pattern '" + regex + "'.";
+            }
+            if (literal == null) {
+                literal = requiredLiteral(regex);
+            }
+            rules.add(new Rule(pattern, message, "block".equalsIgnoreCase(severity),
+                    literal == null || literal.isEmpty() ? null : lowerCase(literal)));
+        }
+        return rules.isEmpty() ? EMPTY : new CustomPatternMatcher(rules);
+    }
+
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    boolean hasBlockingRules() {
+        return hasBlockingRules;
+    }
+
+    /**
+     * @return A hash of every rule, so results computed with different rules can be told apart.
+     */
+    int fingerprint() {
+        int hash = 1;
+        for (Rule rule : rules) {
+            hash = 31 * hash + Objects.hash(rule.pattern.pattern(), rule.message, rule.blocking);
+        }
+        return hash;
+    }
+
+    /**
+     * @return The first rule (in configuration order) matching the line, or null.
+     */
+    Rule match(String line) {
+        return match(line, false);
+    }
+
+    /**
+     * @return The first blocking rule matching the line, or null.
+     */
+    Rule matchBlocking(String line) {
+        return hasBlockingRules ? match(line, true) : null;
+    }
+
+    private Rule match(String line, boolean blockingOnly) {
+        if (rules.isEmpty()) {
+            return null;
+        }
+
+        BitSet candidates = new BitSet(rules.size());
+        for (int rule : alwaysCandidates) {
+            candidates.set(rule);
+        }
+
+        // One Aho-Corasick pass finds every literal that occurs in the line
+        Node node = root;
+        for (int i = 0; i < line.length(); i++) {
+            char c = Character.toLowerCase(line.charAt(i));
+            while (node != root && !node.next.containsKey(c)) {
+                node = node.fail;
+            }
+            node = node.next.getOrDefault(c, root);
+            for (int rule : node.rules) {
+                candidates.set(rule);
+            }
+        }
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            Rule rule = rules.get(i);
+            if ((!blockingOnly || rule.blocking) && rule.pattern.matcher(line).find()) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private void insert(String literal, int rule) {
+        Node node = root;
+        for (int i = 0; i < literal.length(); i++) {
+            node = node.next.computeIfAbsent(literal.charAt(i), c -> new Node());
+        }
+        node.rules = append(node.rules, rule);
+    }
+
+    private void buildFailureLinks() {
+        Deque<Node> queue = new ArrayDeque<>();
+        for (Node child : root.next.values()) {
+            child.fail = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            for (Map.Entry<Character, Node> entry : node.next.entrySet()) {
+                char c = entry.getKey();
+                Node child = entry.getValue();
+                Node fail = node.fail;
+                while (fail != root && !fail.next.containsKey(c)) {
+                    fail = fail.fail;
+                }
+                Node target = fail.next.get(c);
+                child.fail = target != null && target != child ? target : root;
+                for (int rule : child.fail.rules) {
+                    child.rules = append(child.rules, rule);
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] copy = Arrays.copyOf(array, array.length + 1);
+        copy[array.length] = value;
+        return copy;
+    }
+
+    /**
+     * Derives a literal that every match of the regex must contain: the longest run of plain
+     * characters outside of groups, classes and optional parts. Returns null if the regex has an
+     * alternation at the top level, has no usable run, or uses syntax the scan does not follow
+     * (nested classes, quoting, comments mode or Unicode case folding), in which case the rule is
+     * always a candidate. Anything the scan is unsure about ends a run, so a literal it returns is
+     * never wrong, only sometimes shorter than it could be.
+     */
+    static String requiredLiteral(String regex) {
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= regex.length()) {
+                        return null;
+                    }
+                    char escaped = regex.charAt(++i);
+                    if (!Character.isLetterOrDigit(escaped)) {
+                        if (depth == 0) {
+                            run.append(escaped);
+                        }
+                        continue;
+                    }
+                    if (escaped == 'Q') {
+                        return null;
+                    }
+                    // Character classes, anchors and escaped code points end the run, with their argument
+                    best = longer(best, run);
+                    i = skipEscapeArgument(regex, i);
+                    break;
+                case '|':
+                    if (depth == 0) {
+                        return null;
+                    }
+                    break;
+                case '(':
+                    best = longer(best, run);
+                    if (hasUnsupportedFlags(regex, i)) {
+                        return null;
+                    }
+                    depth++;
+                    break;
+                case ')':
+                    best = longer(best, run);
+                    depth = Math.max(0, depth - 1);
+                    break;
+                case '[':
+                    best = longer(best, run);
+                    i = skipClass(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    // The preceding character is optional or repeated
+                    if (run.length() > 0) {
+                        run.setLength(run.length() - 1);
+                    }
+                    best = longer(best, run);
+                    if (c == '{') {
+                        while (i + 1 < regex.length() && regex.charAt(i) != '}') {
+                            i++;
+                        }
+                    }
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    best = longer(best, run);
+                    break;
+                default:
+                    if (depth == 0) {
+                        run.append(c);
+                    }
+                    break;
+            }
+        }
+        best = longer(best, run);
+        return best.length() >= 2 ? best : null;
+    }
+
+    /**
+     * @param i The index of the letter or digit following a backslash.
+     * @return The index of the last character of the escape, including its argument.
+     */
+    private static int skipEscapeArgument(String regex, int i) {
+        char escaped = regex.charAt(i);
+        switch (escaped) {
+            case 'x':
+            case 'p':
+            case 'P':
+            case 'N':
+            case 'b':
+                // \x{1F600}, \p{L}, \N{name} and \b{g}; \x41 and \pL without braces
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '{') {
+                    int close = regex.indexOf('}', i + 1);
+                    return close < 0 ? regex.length() - 1 : close;
+                }
+                return escaped == 'x' ? i + 2 : escaped == 'b' ? i : i + 1;
+            case 'u':
+                return i + 4;
+            case 'c':
+                return i + 1;
+            case 'k':
+                int close = regex.indexOf('>', i + 1);
+                return close < 0 ? regex.length() - 1 : close;
+            default:
+                // Octal escapes (\0377) and back references (\12) take the digits that follow
+                if (Character.isDigit(escaped)) {
+                    while (i + 1 < regex.length() && Character.isDigit(regex.charAt(i + 1))) {
+                        i++;
+                    }
+                }
+                return i;
+        }
+    }
+
+    /**
+     * @param open The index of the {@code [} opening a character class.
+     * @return The index of the {@code ]} closing it, or -1 if it contains a nested class or quoting.
+     */
+    private static int skipClass(String regex, int open) {
+        int i = open + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        // A ] right after the opening bracket is a member, not the end
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    return -1;
+                }
+                i++;
+                if (i < regex.length() && Character.isLetterOrDigit(regex.charAt(i))) {
+                    i = skipEscapeArgument(regex, i);
+                }
+            } else if (c == '[') {
+                return -1;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param open The index of a {@code (}.
+     * @return True if it starts an inline flag group enabling comments mode, where whitespace and
+     *         {@code #} are not literal, or Unicode case folding, where the lowercased literal may not
+     *         occur in a matching line.
+     */
+    private static boolean hasUnsupportedFlags(String regex, int open) {
+        if (open + 1 >= regex.length() || regex.charAt(open + 1) != '?') {
+            return false;
+        }
+        for (int i = open + 2; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == 'x' || c == 'u' || c == 'U') {
+                return true;
+            }
+            if (c != '-' && c != 'i' && c != 'd' && c != 'm' && c != 's') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lowercases every character the way {@link #match} does while scanning, unlike
+     * {@link String#toLowerCase()}, which depends on the locale and may change the length.
+     */
+    private static String lowerCase(String literal) {
+        char[] chars = literal.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static String longer(String best, StringBuilder run) {
+        String candidate = run.toString();
+        run.setLength(0);
+        return candidate.length() > best.length() ? candidate : best;
+    }
+}
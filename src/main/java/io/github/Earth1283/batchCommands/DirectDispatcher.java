@@ -0,0 +1,87 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import java.util.logging.Level;
+
+/**
+ * Executes batch commands by calling {@link Command#execute} directly instead of going through
+ * {@link Bukkit#dispatchCommand}, which splits the line and looks up the label again on every call.
+ * <p>
+ * The command and arguments of a line are resolved the first time it is dispatched and cached on
+ * the {@link BatchAction}, which compiled batches share between runs. The cache is tagged with the
+ * {@link KnownCommandRegistry} generation, so it is resolved again once commands are registered or
+ * removed. Lines that do not resolve to a command fall back to {@code dispatchCommand}.
+ * Must only be used on the main thread.
+ */
+final class DirectDispatcher {
+
+    /**
+     * The resolved form of a line. {@link #command} is null if the line must be dispatched normally.
+     */
+    record Target(long generation, Command command, String[] args) {}
+
+    private static final String[] NO_ARGS = new String[0];
+
+    private final BatchCommands plugin;
+
+    DirectDispatcher(BatchCommands plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Dispatches a line as the console.
+     * @param direct False to always use {@code dispatchCommand}.
+     */
+    void dispatch(BatchAction action, boolean direct) {
+        CommandSender console = Bukkit.getConsoleSender();
+        Command command = direct ? resolve(action) : null;
+        if (command == null) {
+            Bukkit.dispatchCommand(console, action.command);
+            return;
+        }
+
+        try {
+            // Commands may modify their arguments, so each call gets its own copy like with dispatchCommand
+            command.execute(console, action.name, action.target.args().clone());
+        } catch (RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "Unhandled exception executing '" + action.command + "'", e);
+        }
+    }
+
+    private Command resolve(BatchAction action) {
+        KnownCommandRegistry registry = plugin.getCommandRegistry();
+        long generation = registry.getGeneration();
+        Target target = action.target;
+        if (target == null || target.generation() != generation) {
+            Command command = lookup(action, registry);
+            target = new Target(generation, command, command == null ? NO_ARGS : split(action));
+            action.target = target;
+        }
+        return target.command();
+    }
+
+    private static Command lookup(BatchAction action, KnownCommandRegistry registry) {
+        String command = action.command;
+        // The command map splits on spaces only; anything else, e.g. a tab after the name, is left to it
+        if (action.type != BatchAction.Type.COMMAND
+                || (action.nameEnd < command.length() && command.charAt(action.nameEnd) != ' ')) {
+            return null;
+        }
+        return registry.getCommand(action.name);
+    }
+
+    /**
+     * Splits the arguments the same way {@code SimpleCommandMap} does, with {@link String#split}: on single
+     * spaces, so empty arguments between two spaces are kept, but trailing ones are dropped.
+     */
+    private static String[] split(BatchAction action) {
+        String command = action.command;
+        if (action.nameEnd >= command.length()) {
+            return NO_ARGS;
+        }
+        return command.substring(action.nameEnd + 1).split(" ");
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.Earth1283.batchCommands;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runtime instrumentation of batch execution: how long each dispatched command takes (per command
+ * name), how much main-thread time batches use per tick, and what finished runs cost in total.
+ * <p>
+ * Recording costs two {@link System#nanoTime()} calls and a map lookup per command. Latencies go
+ * into power-of-two histograms, so memory does not grow with the number of commands dispatched.
+ * Only accessed from the main thread; {@link #snapshot()} copies everything for use elsewhere.
+ */
+final class DispatchStats {
+
+    /** Bucket {@code i} holds durations in {@code [2^(i-1), 2^i)} nanoseconds. */
+    private static final int BUCKETS = 64;
+
+    /**
+     * The latency distribution of one command name.
+     */
+    static final class Histogram {
+        long count;
+        long totalNanos;
+        long maxNanos;
+        final long[] buckets = new long[BUCKETS];
+
+        void record(long nanos) {
+            nanos = Math.max(1, nanos);
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)]++;
+        }
+
+        /**
+         * @return An upper bound of the given percentile (0-100), accurate to a factor of two.
+         */
+        long percentile(double percentile) {
+            long rank = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(maxNanos, i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i);
+                }
+            }
+            return maxNanos;
+        }
+
+        Histogram copy() {
+            Histogram copy = new Histogram();
+            copy.count = count;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            System.arraycopy(buckets, 0, copy.buckets, 0, BUCKETS);
+            return copy;
+        }
+    }
+
+    /**
+     * The totals of a finished run.
+     */
+    record RunSummary(int id, String fileName, String outcome, int commands, long dispatchNanos, long wallMillis) {}
+
+    /**
+     * An immutable copy of all statistics, safe to hand to another thread.
+     */
+    record Snapshot(long sinceMillis, Map<String, Histogram> commands, Histogram ticks, List<RunSummary> runs) {
+
+        /**
+         * @return The command names, most total dispatch time first.
+         */
+        List<String> commandsByTotalTime() {
+            List<String> names = new ArrayList<>(commands.keySet());
+            names.sort(Comparator.comparingLong((String name) -> commands.get(name).totalNanos).reversed());
+            return names;
+        }
+    }
+
+    private final Map<String, Histogram> commands = new HashMap<>();
+    private final Deque<RunSummary> runs = new ArrayDeque<>();
+    private Histogram ticks = new Histogram();
+    private long sinceMillis = System.currentTimeMillis();
+
+    /**
+     * Records one dispatched command.
+     * @param name The lowercase command name, as parsed by the {@link LineTokenizer}.
+     */
+    void recordCommand(String name, long nanos) {
+        Histogram histogram = commands.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            commands.put(name, histogram);
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Records the main-thread time of a tick in which batches dispatched at least one command.
+     */
+    void recordTick(long nanos) {
+        ticks.record(nanos);
+    }
+
+    /**
+     * Records a run that completed or was cancelled, keeping only the most recent ones.
+     */
+    void recordRun(BatchRun run, int maxRuns) {
+        if (maxRuns <= 0) {
+            return;
+        }
+        runs.addLast(new RunSummary(run.id, run.fileName, run.state.name().toLowerCase(), run.executed,
+                run.dispatchNanos, System.currentTimeMillis() - run.createdAt));
+        while (runs.size() > maxRuns) {
+            runs.removeFirst();
+        }
+    }
+
+    void reset() {
+        commands.clear();
+        runs.clear();
+        ticks = new Histogram();
+        sinceMillis = System.currentTimeMillis();
+    }
+
+    Snapshot snapshot() {
+        Map<String, Histogram> copy = new HashMap<>();
+        commands.forEach((name, histogram) -> copy.put(name, histogram.copy()));
+        return new Snapshot(sinceMillis, Collections.unmodifiableMap(copy), ticks.copy(), List.copyOf(runs));
+    }
+}
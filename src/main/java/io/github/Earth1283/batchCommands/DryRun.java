@@ -0,0 +1,272 @@
+package io.github.Earth1283.batchCommands;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Estimates what running a compiled batch would cost, without dispatching anything: how long it takes,
+ * how many commands end up in a single tick, and how much main-thread time its commands need.
+ * <p>
+ * The batch is split into bursts, the commands between two sleeps, which the {@link BatchRunManager}
+ * dispatches in one tick or, with a dispatch budget, spread over consecutive ticks. Includes and loops
+ * are not expanded: a segment is summarised once, and a loop repeats the summary of its body by
+ * doubling, so the estimate takes time proportional to the size of the files, not the number of
+ * iterations. Main-thread time comes from the {@link DispatchStats} of earlier runs. The estimate
+ * assumes the batch runs alone, at 20 TPS, with adaptive dispatch at its full limit.
+ */
+final class DryRun {
+
+    /** The number of lines listed as expected to cost the most. */
+    static final int TOP_LINES = 5;
+
+    /**
+     * A line of the batch and what all of its executions are expected to cost.
+     * @param nanos The estimated main-thread time of all executions, or 0 without timings.
+     */
+    record Line(String command, long count, long nanos) {}
+
+    /**
+     * @param sleepTicks The ticks spent sleeping with {@code timer-mode: ticks}.
+     * @param sleepSeconds The time spent sleeping with {@code timer-mode: realtime}.
+     * @param spreadTicks The additional ticks needed because the dispatch budget spreads bursts.
+     * @param durationSeconds The estimated time from the first to the last command with the current settings.
+     * @param peakCommands The most commands dispatched in a single tick.
+     * @param peakNanos The main-thread time of the most expensive tick.
+     * @param totalNanos The main-thread time of all commands.
+     * @param unmeasured The number of commands without timings of their own, estimated with the average of all commands.
+     * @param timed False if there are no timings at all, so none of the times mean anything.
+     */
+    record Estimate(long commands, long sleeps, long sleepTicks, double sleepSeconds, long spreadTicks,
+                    double durationSeconds, long peakCommands, long peakNanos, long totalNanos, long unmeasured,
+                    boolean timed, List<Line> lines) {}
+
+    /** Commands that are dispatched together, and their estimated main-thread time. */
+    private record Burst(long commands, long nanos) {
+
+        static final Burst EMPTY = new Burst(0, 0);
+
+        Burst plus(Burst other) {
+            return new Burst(commands + other.commands, nanos + other.nanos);
+        }
+    }
+
+    /**
+     * The summary of a sequence of actions. Without a sleep, everything is in {@code head}. Otherwise
+     * {@code head} runs before the first sleep and {@code tail} after the last one; both may still merge
+     * with the bursts of the neighbouring sequences. Only the bursts in between are complete and counted
+     * in the peak and spread.
+     */
+    private record Span(Burst head, boolean slept, Burst tail, long sleeps, long sleepTicks, double sleepSeconds,
+                        long spreadTicks, long peakCommands, long peakNanos) {
+
+        static final Span EMPTY = new Span(Burst.EMPTY, false, Burst.EMPTY, 0, 0, 0, 0, 0, 0);
+    }
+
+    private final BatchSettings settings;
+    private final Map<String, DispatchStats.Histogram> history;
+    private final int players;
+    private final int worlds;
+    private final long averageNanos;
+    private long unmeasured = 0;
+
+    private DryRun(BatchSettings settings, Map<String, DispatchStats.Histogram> history, int players, int worlds) {
+        this.settings = settings;
+        this.history = history;
+        this.players = players;
+        this.worlds = worlds;
+        long count = 0;
+        long total = 0;
+        for (DispatchStats.Histogram histogram : history.values()) {
+            count += histogram.count;
+            total += histogram.totalNanos;
+        }
+        this.averageNanos = count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * Estimates a batch. Safe to call from an async thread.
+     * @param history The timings per command name, from a {@link DispatchStats#snapshot()}.
+     * @param players The number of online players, the iterations of {@code !foreach player}.
+     * @param worlds The number of worlds, the iterations of {@code !foreach world}.
+     */
+    static Estimate estimate(CompiledBatch batch, BatchSettings settings, Map<String, DispatchStats.Histogram> history,
+                             int players, int worlds) {
+        DryRun dryRun = new DryRun(settings, history, players, worlds);
+        // Between two zero-length sleeps, the bursts at the very start and end are complete too
+        Span boundary = new Span(Burst.EMPTY, true, Burst.EMPTY, 0, 0, 0, 0, 0, 0);
+        Span span = dryRun.join(dryRun.join(boundary, dryRun.summarise(batch.actions)), boundary);
+
+        Counter counter = new Counter();
+        dryRun.rank(batch.actions, 1, counter);
+
+        double sleepSeconds = settings.realtimeTimer ? span.sleepSeconds : span.sleepTicks / 20.0;
+        return new Estimate(counter.commands, span.sleeps, span.sleepTicks, span.sleepSeconds, span.spreadTicks,
+                sleepSeconds + span.spreadTicks / 20.0, span.peakCommands, span.peakNanos, counter.nanos,
+                dryRun.unmeasured, dryRun.averageNanos > 0, counter.lines());
+    }
+
+    private Span summarise(List<BatchAction> actions) {
+        Span span = Span.EMPTY;
+        for (BatchAction action : actions) {
+            span = join(span, summarise(action));
+        }
+        return span;
+    }
+
+    private Span summarise(BatchAction action) {
+        // Mirrors BatchRunManager: sleeps wait, segments are stepped into, everything else is dispatched
+        if (action.segment != null) {
+            Span body = summarise(action.segment.actions);
+            return switch (action.type) {
+                case REPEAT -> repeat(body, (long) action.seconds);
+                case FOREACH -> repeat(body, LineTokenizer.PLAYER.equals(action.argument) ? players : worlds);
+                default -> body;
+            };
+        }
+        if (action.type == BatchAction.Type.SLEEP) {
+            // A zero-tick sleep still yields until the next tick
+            long ticks = Math.max(1L, (long) (action.seconds * 20));
+            return new Span(Burst.EMPTY, true, Burst.EMPTY, 1, ticks, action.seconds, 0, 0, 0);
+        }
+        return command(new Burst(1, nanos(action.name)));
+    }
+
+    private Span command(Burst burst) {
+        return new Span(burst, false, Burst.EMPTY, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Concatenates two sequences. The last burst of the first and the first burst of the second are
+     * dispatched together, so if both contain a sleep, that burst is complete.
+     */
+    private Span join(Span a, Span b) {
+        if (!a.slept && !b.slept) {
+            return command(a.head.plus(b.head));
+        }
+        if (!a.slept) {
+            return new Span(a.head.plus(b.head), true, b.tail, b.sleeps, b.sleepTicks, b.sleepSeconds,
+                    b.spreadTicks, b.peakCommands, b.peakNanos);
+        }
+        if (!b.slept) {
+            return new Span(a.head, true, a.tail.plus(b.head), a.sleeps, a.sleepTicks, a.sleepSeconds,
+                    a.spreadTicks, a.peakCommands, a.peakNanos);
+        }
+        Burst middle = a.tail.plus(b.head);
+        return new Span(a.head, true, b.tail, a.sleeps + b.sleeps, a.sleepTicks + b.sleepTicks,
+                a.sleepSeconds + b.sleepSeconds, a.spreadTicks + b.spreadTicks + Math.max(0, ticks(middle) - 1),
+                Math.max(Math.max(a.peakCommands, b.peakCommands), peakCommands(middle)),
+                Math.max(Math.max(a.peakNanos, b.peakNanos), peakNanos(middle)));
+    }
+
+    /**
+     * @return The sequence repeated {@code times} times, built by doubling.
+     */
+    private Span repeat(Span span, long times) {
+        Span result = Span.EMPTY;
+        Span power = span;
+        while (times > 0) {
+            if ((times & 1) == 1) {
+                result = join(result, power);
+            }
+            times >>= 1;
+            if (times > 0) {
+                power = join(power, power);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of commands of a burst that are dispatched per tick.
+     */
+    private long perTick(Burst burst) {
+        if (!settings.budgetedDispatch) {
+            return Math.max(1, burst.commands);
+        }
+        long perTick = Math.max(1, settings.maxCommandsPerTick);
+        if (burst.nanos > 0) {
+            // The budget is checked before each command, so the command crossing it still runs
+            double average = burst.nanos / (double) burst.commands;
+            perTick = Math.min(perTick, Math.max(1, (long) Math.ceil(settings.tickBudgetNanos / average)));
+        }
+        return perTick;
+    }
+
+    private long ticks(Burst burst) {
+        if (burst.commands == 0) {
+            return 0;
+        }
+        long perTick = perTick(burst);
+        return (burst.commands + perTick - 1) / perTick;
+    }
+
+    private long peakCommands(Burst burst) {
+        return Math.min(burst.commands, perTick(burst));
+    }
+
+    private long peakNanos(Burst burst) {
+        if (burst.commands == 0) {
+            return 0;
+        }
+        return (long) (burst.nanos / (double) burst.commands * peakCommands(burst));
+    }
+
+    /**
+     * @return The average main-thread time of a command, or of all commands if it has no timings yet.
+     */
+    private long nanos(String name) {
+        DispatchStats.Histogram histogram = history.get(name);
+        return histogram == null || histogram.count == 0 ? averageNanos : histogram.totalNanos / histogram.count;
+    }
+
+    /**
+     * Counts the executions of every line and keeps the ones expected to cost the most.
+     * Lines of a shared include are counted per place it is included from.
+     */
+    private static final class Counter {
+        long commands = 0;
+        long nanos = 0;
+        private final PriorityQueue<Line> top = new PriorityQueue<>(
+                Comparator.comparingLong(Line::nanos).thenComparingLong(Line::count));
+
+        void add(Line line) {
+            top.add(line);
+            if (top.size() > TOP_LINES) {
+                top.poll();
+            }
+        }
+
+        List<Line> lines() {
+            List<Line> lines = new ArrayList<>(top);
+            lines.sort(Comparator.comparingLong(Line::nanos).thenComparingLong(Line::count).reversed());
+            return lines;
+        }
+    }
+
+    private void rank(List<BatchAction> actions, long times, Counter counter) {
+        for (BatchAction action : actions) {
+            if (action.segment != null) {
+                long iterations = switch (action.type) {
+                    case REPEAT -> (long) action.seconds;
+                    case FOREACH -> LineTokenizer.PLAYER.equals(action.argument) ? players : worlds;
+                    default -> 1;
+                };
+                if (iterations > 0) {
+                    rank(action.segment.actions, times * iterations, counter);
+                }
+            } else if (action.type != BatchAction.Type.SLEEP) {
+                long nanos = nanos(action.name);
+                DispatchStats.Histogram histogram = history.get(action.name);
+                if (histogram == null || histogram.count == 0) {
+                    unmeasured += times;
+                }
+                counter.commands += times;
+                counter.nanos += nanos * times;
+                counter.add(new Line(action.command, times, nanos * times));
+            }
+        }
+    }
+}
@@ -1,81 +1,44 @@
 package io.github.Earth1283.batchCommands;
 
-import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
 import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
-import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
-import org.bukkit.help.HelpTopic;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.EnumMap;
-import java.util.HashSet;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 
 public class FileBatchCommand implements CommandExecutor {
 
-    private final BatchCommands plugin;
-    private final MiniMessage miniMessage;
-    private final BatchLinter linter;
+    // How much of the statistics /filebatch stats shows in chat; exports contain everything
+    private static final int STATS_TOP_COMMANDS = 10;
+    private static final int STATS_RECENT_RUNS = 5;
 
-    private enum ActionType { COMMAND, SLEEP }
+    /** Matched before batch file names, so a file named like one runs with {@code run} or its extension. */
+    static final Set<String> SUBCOMMANDS = Set.of("run", "reload", "status", "stats", "compile", "dryrun", "recover",
+            "pause", "resume", "cancel");
 
-    private static class BatchAction {
-        ActionType type;
-        String command;
-        double seconds;
-
-        BatchAction(String command) {
-            this.type = ActionType.COMMAND;
-            this.command = command;
-        }
-
-        BatchAction(double seconds) {
-            this.type = ActionType.SLEEP;
-            this.seconds = seconds;
-        }
-    }
+    private final BatchCommands plugin;
+    private final MiniMessage miniMessage;
+    private final BatchCompiler compiler;
 
     public FileBatchCommand(BatchCommands plugin) {
         this.plugin = plugin;
         this.miniMessage = MiniMessage.miniMessage();
-        this.linter = new BatchLinter(plugin);
+        this.compiler = new BatchCompiler(plugin.getBatchesFolder().toPath(), plugin::getBatchCache);
     }
 
     private void sendMessage(CommandSender sender, String key, TagResolver... placeholders) {
-        String prefix = plugin.getConfig().getString("messages.prefix", "");
-        String message = plugin.getConfig().getString("messages." + key, "");
-        if (!message.isEmpty()) {
-            Component component = miniMessage.deserialize(prefix + message, placeholders);
-            sender.sendMessage(component);
-        }
-    }
-
-    private boolean isDangerous(String commandLine, List<String> blacklist) {
-        String temp = commandLine;
-        if (temp.startsWith("/")) {
-            temp = temp.substring(1);
-        }
-        
-        String[] parts = temp.split("\\s+");
-        if (parts.length == 0) return false;
-        String commandName = parts[0];
-
-        for (String blocked : blacklist) {
-            if (commandName.equalsIgnoreCase(blocked)) {
-                return true;
-            }
-        }
-        return false;
+        plugin.sendMessage(sender, key, placeholders);
     }
 
     @Override
@@ -85,218 +48,645 @@ public class FileBatchCommand implements CommandExecutor {
             return true;
         }
 
-        if (args.length != 1) {
+        // On Folia, players' commands run on their region's thread; runs are only touched on the global one
+        if (!plugin.getTaskScheduler().isGlobalThread()) {
+            plugin.getTaskScheduler().runGlobal(() -> onCommand(sender, command, label, args));
+            return true;
+        }
+
+        if (args.length == 0) {
             sendMessage(sender, "usage");
             return false;
         }
 
-        String extension = plugin.getFileExtension();
-        String rawFileName = args[0];
-        final String finalFileName = rawFileName.toLowerCase().endsWith(extension)
-                ? rawFileName
-                : rawFileName + extension;
+        switch (args[0].toLowerCase()) {
+            case "run":
+                if (args.length != 2) {
+                    sendMessage(sender, "usage");
+                    return false;
+                }
+                break;
+            case "reload":
+                if (!sender.hasPermission("batchcommands.reload")) {
+                    sendMessage(sender, "no-permission");
+                    return true;
+                }
+                plugin.reloadSettings();
+                sendMessage(sender, "reloaded");
+                return true;
+            case "status":
+                return handleStatus(sender, args);
+            case "stats":
+                return handleStats(sender, args);
+            case "compile":
+                return handleCompile(sender, args);
+            case "dryrun":
+                return handleDryRun(sender, args);
+            case "recover":
+                return handleRecover(sender, args);
+            case "pause":
+            case "resume":
+            case "cancel":
+                return handleRunControl(sender, args);
+            default:
+                break;
+        }
 
-        File batchFile = new File(plugin.getBatchesFolder(), finalFileName);
+        boolean explicit = args[0].equalsIgnoreCase("run");
+        if (!explicit && args.length != 1) {
+            sendMessage(sender, "usage");
+            return false;
+        }
 
-        if (!batchFile.exists() || batchFile.isDirectory()) {
-            sendMessage(sender, "file-not-found", Placeholder.unparsed("filename", finalFileName));
-            return true;
+        File batchFile = resolveBatchFile(sender, explicit ? args[1] : args[0]);
+        if (batchFile != null) {
+            startRun(sender, batchFile, 0);
         }
+        return true;
+    }
+
+    /**
+     * Compiles a batch file, or starts streaming it, and submits it as a new run.
+     * @param resumeFrom The number of steps to skip, to resume an interrupted run; 0 to start at the top.
+     */
+    private void startRun(CommandSender sender, File batchFile, long resumeFrom) {
+        BatchSettings settings = plugin.getSettings();
+        final String finalFileName = displayName(batchFile);
 
         sendMessage(sender, "execution-started", Placeholder.unparsed("filename", finalFileName));
 
-        // Capture known commands on the main thread for thread safety
-        Set<String> knownCommands = new HashSet<>();
-        for (HelpTopic topic : Bukkit.getHelpMap().getHelpTopics()) {
-            String name = topic.getName();
-            if (name.startsWith("/")) {
-                knownCommands.add(name.substring(1).toLowerCase());
-            } else {
-                knownCommands.add(name.toLowerCase());
+        // Immutable snapshot, safe to hand to the async thread as-is
+        Set<String> knownCommands = plugin.getCommandRegistry().getKnownCommands();
+
+        boolean stream = settings.streamingMinBytes >= 0 && batchFile.length() >= settings.streamingMinBytes;
+
+        plugin.getTaskScheduler().runAsync(() -> {
+            // Taken before compiling, so a file edited in between never matches what ran
+            final byte[] sourceHash = sourceHash(batchFile, settings);
+
+            // Very large files are executed while they are being read instead of being compiled up front,
+            // unless an up-to-date precompiled version exists
+            if (stream && !PrecompiledBatch.isFresh(batchFile)) {
+                plugin.getTaskScheduler().runGlobal(() ->
+                        startStreaming(sender, batchFile, finalFileName, knownCommands, settings, sourceHash, resumeFrom));
+                return;
             }
-        }
 
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            List<BatchAction> batchActions = new ArrayList<>();
-            List<String> linterWarnings = new ArrayList<>();
-            int skippedCount = 0;
-            
-            boolean removeDangerous = plugin.getConfig().getBoolean("security.remove-dangerous-commands", true);
-            List<String> blacklist = plugin.getConfig().getStringList("security.command-blacklist");
-            
-            // Linter setup
-            long maxTime = plugin.getLinterConfig().getLong("execution.max-lint-time-ms", 100);
-            long deadline = System.currentTimeMillis() + maxTime;
-            boolean debugMode = plugin.getLinterConfig().getBoolean("execution.debug-mode", false);
-            
-            List<String> orderStrings = plugin.getLinterConfig().getStringList("execution.lint-order");
-            List<BatchLinter.LintCheck> order = new ArrayList<>();
-            for (String s : orderStrings) {
+            BatchCache cache = plugin.getBatchCache();
+            BatchCache.Key key = BatchCache.Key.of(batchFile);
+            CompiledBatch cached = cache.get(key);
+            CompiledBatch compiled = cached;
+            CompiledBatch precompiled = null;
+
+            if (compiled == null) {
                 try {
-                    order.add(BatchLinter.LintCheck.valueOf(s));
-                } catch (IllegalArgumentException ignored) {}
+                    precompiled = PrecompiledBatch.load(batchFile, PrecompiledBatch.fingerprint(settings, knownCommands));
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.WARNING, "Ignoring unreadable precompiled file of " + finalFileName, e);
+                }
+                compiled = precompiled;
             }
-            
-            // Only apply defaults if the key is missing from the config entirely
-            if (order.isEmpty() && !plugin.getLinterConfig().contains("execution.lint-order")) {
-                order.add(BatchLinter.LintCheck.META_SYNTAX);
-                order.add(BatchLinter.LintCheck.UNKNOWN_META);
-                order.add(BatchLinter.LintCheck.BLACKLIST);
-                order.add(BatchLinter.LintCheck.EXISTENCE);
+
+            if (compiled == null && stream) {
+                // The precompiled file is outdated or unreadable; stream the file rather than compiling all of it into memory
+                plugin.getTaskScheduler().runGlobal(() ->
+                        startStreaming(sender, batchFile, finalFileName, knownCommands, settings, sourceHash, resumeFrom));
+                return;
             }
-            
-            boolean linterTimedOut = false;
-            Map<BatchLinter.LintCheck, Long> totalTimings = new EnumMap<>(BatchLinter.LintCheck.class);
-
-            try (BufferedReader reader = new BufferedReader(new FileReader(batchFile))) {
-                String line;
-                int lineNumber = 0;
-                while ((line = reader.readLine()) != null) {
-                    lineNumber++;
-                    line = line.trim();
-                    // Ignore empty lines and Python-style comments (#)
-                    if (!line.isEmpty() && !line.startsWith("#")) {
-                        
-                        // Run linter check if not timed out
-                        if (!linterTimedOut) {
-                            try {
-                                BatchLinter.LinterResult result = linter.check(line, knownCommands, blacklist, order, deadline);
-                                if (result.warning != null) {
-                                    linterWarnings.add("Line " + lineNumber + ": " + result.warning);
-                                }
-                                
-                                if (debugMode) {
-                                    for (Map.Entry<BatchLinter.LintCheck, Long> entry : result.timings.entrySet()) {
-                                        totalTimings.merge(entry.getKey(), entry.getValue(), Long::sum);
-                                    }
-                                }
-                            } catch (BatchLinter.LinterTimeoutException e) {
-                                linterTimedOut = true;
-                                String action = plugin.getLinterConfig().getString("execution.on-timeout", "SKIP_LINTER");
-                                if ("CANCEL_EXECUTION".equalsIgnoreCase(action)) {
-                                    Bukkit.getScheduler().runTask(plugin, () -> 
-                                        sender.sendMessage(miniMessage.deserialize("<red>Linter timed out. Execution cancelled."))
-                                    );
-                                    return;
-                                }
-                                linterWarnings.add("<yellow>Linter timed out. Skipping checks for remaining lines.");
-                            }
-                        }
-
-                        // Check for sleep command
-                        if (line.toLowerCase().startsWith("!sleep")) {
-                            String[] parts = line.split("\\s+");
-                            if (parts.length >= 2) {
-                                try {
-                                    double seconds = Double.parseDouble(parts[1]);
-                                    batchActions.add(new BatchAction(seconds));
-                                } catch (NumberFormatException e) {
-                                    sendMessage(sender, "invalid-sleep", Placeholder.unparsed("line", line));
-                                }
-                            } else {
-                                sendMessage(sender, "invalid-sleep", Placeholder.unparsed("line", line));
-                            }
-                            continue;
-                        }
-
-                        // Check security for normal commands
-                        if (removeDangerous && isDangerous(line, blacklist)) {
-                            skippedCount++;
-                            continue;
-                        }
-                        batchActions.add(new BatchAction(line));
-                    }
-                }
-                
-                // Check for empty file warning
-                if (batchActions.isEmpty() && plugin.getLinterConfig().getBoolean("enabled", true) 
-                        && plugin.getLinterConfig().getBoolean("rules.warn-empty-file", true)) {
-                     linterWarnings.add("File appears to be empty or contains no valid commands.");
+
+            if (compiled == null) {
+                try {
+                    compiled = compiler.compile(batchFile, knownCommands, settings);
+                } catch (BatchLinter.LinterTimeoutException e) {
+                    plugin.getTaskScheduler().runGlobal(() ->
+                        sender.sendMessage(miniMessage.deserialize("<red>Linter timed out. Execution cancelled."))
+                    );
+                    return;
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not read batch file: " + finalFileName, e);
+                    plugin.getTaskScheduler().runGlobal(() -> sendMessage(sender, "read-error"));
+                    return;
                 }
-                
-            } catch (IOException e) {
-                sendMessage(sender, "read-error");
-                plugin.getLogger().severe("Could not read batch file: " + finalFileName);
-                e.printStackTrace();
-                return;
+            }
+            if (cached == null) {
+                cache.put(key, compiled);
             }
 
-            final int finalSkippedCount = skippedCount;
-            final List<String> finalWarnings = linterWarnings;
-            final Map<BatchLinter.LintCheck, Long> finalTimings = totalTimings;
+            final CompiledBatch batch = compiled;
+            final boolean fromCache = cached != null;
+            final boolean fromPrecompiled = precompiled != null;
+            final boolean debugMode = settings.linter.debugMode;
+
+            // Group, log and render the warnings here, so the main thread sends a single message
+            final LintReport report = LintReport.create(finalFileName, batch.warnings, batch.invalidSleepLines,
+                    settings, reportsFolder(), plugin.getLogger());
 
             // Start execution on the main thread
-            Bukkit.getScheduler().runTask(plugin, () -> {
+            plugin.getTaskScheduler().runGlobal(() -> {
                 // Show warnings first
-                if (!finalWarnings.isEmpty()) {
-                    sender.sendMessage(miniMessage.deserialize("<yellow><b>Linter Warnings:</b>"));
-                    for (String w : finalWarnings) {
-                        sender.sendMessage(miniMessage.deserialize("<yellow> - " + w));
-                    }
+                if (report != null) {
+                    sender.sendMessage(report.summary());
                 }
                 
                 // Show debug report
-                if (debugMode && !finalTimings.isEmpty()) {
-                    sender.sendMessage(miniMessage.deserialize("<gray><b>Linter Debug Report:</b>"));
-                    for (Map.Entry<BatchLinter.LintCheck, Long> entry : finalTimings.entrySet()) {
+                if (debugMode && fromCache) {
+                    sender.sendMessage(miniMessage.deserialize("<gray><b>Linter Debug Report:</b> <yellow>served from cache"
+                            + " <gray>(hits: " + cache.getHits() + ", misses: " + cache.getMisses() + ")"));
+                } else if (debugMode && !batch.timings.isEmpty()) {
+                    sender.sendMessage(miniMessage.deserialize("<gray><b>Linter Debug Report:</b>"
+                            + (fromPrecompiled ? " <yellow>loaded from " + PrecompiledBatch.fileFor(batchFile).getName() : "")));
+                    for (Map.Entry<BatchLinter.LintCheck, Long> entry : batch.timings.entrySet()) {
                         double ms = entry.getValue() / 1_000_000.0;
                         sender.sendMessage(miniMessage.deserialize("<gray> - " + entry.getKey() + ": <yellow>" + String.format("%.2f", ms) + "ms"));
                     }
                 }
                 
-                executeBatch(sender, finalFileName, batchActions, 0, 0, finalSkippedCount);
+                plugin.getRunManager().submit(sender, finalFileName, sourceHash, new ListCursor(batch), resumeFrom);
             });
         });
+    }
+
+    /**
+     * Starts reading a batch file in chunks and submits it as a new run while it is being read.
+     */
+    private void startStreaming(CommandSender sender, File batchFile, String fileName, Set<String> knownCommands,
+                                BatchSettings settings, byte[] sourceHash, long resumeFrom) {
+        StreamingBatchReader reader = new StreamingBatchReader(batchFile.toPath(),
+                compiler.begin(batchFile, knownCommands, settings, settings.streamingMaxWarnings),
+                settings.streamingChunkSize, settings.streamingQueueChunks, settings.streamingMaxLoopLines,
+                (warnings, invalidSleepLines) -> LintReport.create(fileName, warnings, invalidSleepLines,
+                        settings, reportsFolder(), plugin.getLogger()),
+                plugin.getLogger());
+        reader.start();
+        plugin.getRunManager().submit(sender, fileName, sourceHash, reader, resumeFrom);
+    }
+
+    /**
+     * @return The hash the run journal records for a run of the file, or null if runs are not journaled
+     *         or the file cannot be read, so the run cannot be resumed. Reads the file and its includes,
+     *         so call it from an async thread.
+     */
+    private byte[] sourceHash(File batchFile, BatchSettings settings) {
+        if (plugin.getRunJournal() == null) {
+            return null;
+        }
+        try {
+            return compiler.hashSources(batchFile, settings);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolves a file name typed by a user to a batch file, appending the extension if needed.
+     * The name may include subfolders, e.g. {@code maintenance/daily}.
+     * @return The batch file, or null (after telling the sender) if it does not exist.
+     */
+    private File resolveBatchFile(CommandSender sender, String rawFileName) {
+        String extension = plugin.getSettings().fileExtension;
+        String fileName = rawFileName.toLowerCase().endsWith(extension)
+                ? rawFileName
+                : rawFileName + extension;
+
+        // Subfolders are allowed, but nothing outside of the batches folder
+        Path folder = plugin.getBatchesFolder().toPath().toAbsolutePath().normalize();
+        Path path = folder.resolve(fileName).normalize();
+        File batchFile = path.toFile();
+
+        if (!path.startsWith(folder) || !batchFile.exists() || batchFile.isDirectory()) {
+            sendMessage(sender, "file-not-found", Placeholder.unparsed("filename", fileName));
+            return null;
+        }
+        return batchFile;
+    }
+
+    private File reportsFolder() {
+        return new File(plugin.getDataFolder(), "reports");
+    }
+
+    /**
+     * @return The name of a batch file relative to the batches folder, e.g. {@code maintenance/daily.batch}.
+     */
+    private String displayName(File batchFile) {
+        Path folder = plugin.getBatchesFolder().toPath().toAbsolutePath().normalize();
+        return folder.relativize(batchFile.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    private boolean handleCompile(CommandSender sender, String[] args) {
+        if (args.length != 2) {
+            sendMessage(sender, "usage");
+            return false;
+        }
+
+        File batchFile = resolveBatchFile(sender, args[1]);
+        if (batchFile == null) {
+            return true;
+        }
+
+        BatchSettings settings = plugin.getSettings();
+        Set<String> knownCommands = plugin.getCommandRegistry().getKnownCommands();
+        TagResolver fileName = Placeholder.unparsed("filename", displayName(batchFile));
+
+        plugin.getTaskScheduler().runAsync(() -> {
+            try {
+                CompiledBatch batch = compiler.compile(batchFile, knownCommands, settings);
+                if (!PrecompiledBatch.supports(batch)) {
+                    plugin.getTaskScheduler().runGlobal(() -> sendMessage(sender, "compile-unsupported", fileName));
+                    return;
+                }
+                File output = PrecompiledBatch.write(batchFile, batch, PrecompiledBatch.fingerprint(settings, knownCommands));
+                plugin.getTaskScheduler().runGlobal(() -> sendMessage(sender, "compiled", fileName,
+                        Placeholder.unparsed("output", output.getName()),
+                        Placeholder.unparsed("count", String.valueOf(batch.actions.size())),
+                        Placeholder.unparsed("warnings", String.valueOf(batch.warnings.size()))));
+            } catch (BatchLinter.LinterTimeoutException e) {
+                plugin.getTaskScheduler().runGlobal(() ->
+                        sender.sendMessage(miniMessage.deserialize("<red>Linter timed out. Compilation cancelled.")));
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not compile batch file: " + batchFile.getName(), e);
+                plugin.getTaskScheduler().runGlobal(() -> sendMessage(sender, "compile-failed", fileName));
+            }
+        });
+        return true;
+    }
+
+    private boolean handleDryRun(CommandSender sender, String[] args) {
+        if (args.length != 2) {
+            sendMessage(sender, "usage");
+            return false;
+        }
+
+        File batchFile = resolveBatchFile(sender, args[1]);
+        if (batchFile == null) {
+            return true;
+        }
+
+        BatchSettings settings = plugin.getSettings();
+        Set<String> knownCommands = plugin.getCommandRegistry().getKnownCommands();
+        String displayName = displayName(batchFile);
+        // Copied on the main thread, like everything the estimate reads from the server
+        Map<String, DispatchStats.Histogram> history = plugin.getRunManager().getStats().snapshot().commands();
+        int players = plugin.getServer().getOnlinePlayers().size();
+        int worlds = plugin.getServer().getWorlds().size();
+
+        plugin.getTaskScheduler().runAsync(() -> {
+            BatchCache cache = plugin.getBatchCache();
+            BatchCache.Key key = BatchCache.Key.of(batchFile);
+            CompiledBatch batch = cache.get(key);
+            if (batch == null) {
+                try {
+                    batch = compiler.compile(batchFile, knownCommands, settings);
+                } catch (BatchLinter.LinterTimeoutException e) {
+                    plugin.getTaskScheduler().runGlobal(() ->
+                            sender.sendMessage(miniMessage.deserialize("<red>Linter timed out. Dry run cancelled.")));
+                    return;
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not read batch file: " + displayName, e);
+                    plugin.getTaskScheduler().runGlobal(() -> sendMessage(sender, "read-error"));
+                    return;
+                }
+                cache.put(key, batch);
+            }
 
+            final CompiledBatch compiled = batch;
+            final LintReport report = LintReport.create(displayName, compiled.warnings, compiled.invalidSleepLines,
+                    settings, reportsFolder(), plugin.getLogger());
+            final DryRun.Estimate estimate = DryRun.estimate(compiled, settings, history, players, worlds);
+            plugin.getTaskScheduler().runGlobal(() -> sendDryRun(sender, displayName, compiled, report, estimate, settings));
+        });
         return true;
     }
 
-    private void executeBatch(CommandSender sender, String fileName, List<BatchAction> actions, int startIndex, int previouslyExecuted, int skippedCount) {
-        int executed = previouslyExecuted;
+    private void sendDryRun(CommandSender sender, String displayName, CompiledBatch batch, LintReport report,
+                            DryRun.Estimate estimate, BatchSettings settings) {
+        if (report != null) {
+            sender.sendMessage(report.summary());
+        }
+        TagResolver fileName = Placeholder.unparsed("filename", displayName);
+        sendMessage(sender, "dryrun-header", fileName,
+                Placeholder.unparsed("count", String.valueOf(estimate.commands())),
+                Placeholder.unparsed("sleeps", String.valueOf(estimate.sleeps())),
+                Placeholder.unparsed("warnings", String.valueOf(batch.warnings.size())));
+        if (batch.skippedCount > 0) {
+            sendMessage(sender, "skipped-dangerous", fileName,
+                    Placeholder.unparsed("count", String.valueOf(batch.skippedCount)));
+        }
+        sendMessage(sender, "dryrun-sleeps",
+                Placeholder.unparsed("ticks", String.valueOf(estimate.sleepTicks())),
+                Placeholder.unparsed("tick-time", duration(estimate.sleepTicks() / 20.0)),
+                Placeholder.unparsed("realtime", duration(estimate.sleepSeconds())));
+
+        String mode = settings.adaptiveDispatch ? "adaptive" : settings.budgetedDispatch ? "budgeted" : "instant";
+        sendMessage(sender, "dryrun-duration",
+                Placeholder.unparsed("duration", duration(estimate.durationSeconds())),
+                Placeholder.unparsed("mode", mode),
+                Placeholder.unparsed("spread", String.valueOf(estimate.spreadTicks())));
+
+        if (!estimate.timed()) {
+            sendMessage(sender, "dryrun-no-timings");
+        } else {
+            sendMessage(sender, "dryrun-peak",
+                    Placeholder.unparsed("count", String.valueOf(estimate.peakCommands())),
+                    Placeholder.unparsed("time", StatsExporter.ms(estimate.peakNanos())));
+            sendMessage(sender, "dryrun-total",
+                    Placeholder.unparsed("time", StatsExporter.ms(estimate.totalNanos())),
+                    Placeholder.unparsed("unmeasured", String.valueOf(estimate.unmeasured())));
+        }
 
-        for (int i = startIndex; i < actions.size(); i++) {
-            BatchAction action = actions.get(i);
+        if (!estimate.lines().isEmpty()) {
+            sendMessage(sender, "dryrun-lines-header");
+            for (DryRun.Line line : estimate.lines()) {
+                sendMessage(sender, "dryrun-line",
+                        Placeholder.unparsed("line", line.command()),
+                        Placeholder.unparsed("count", String.valueOf(line.count())),
+                        Placeholder.unparsed("time", StatsExporter.ms(line.nanos())));
+            }
+        }
+    }
+
+    /**
+     * @return A duration such as {@code 45.5s}, {@code 12m 5s} or {@code 3h 20m}.
+     */
+    private static String duration(double seconds) {
+        if (seconds < 60) {
+            return String.format("%.1fs", seconds);
+        }
+        long total = Math.round(seconds);
+        if (total < 3600) {
+            return total / 60 + "m " + total % 60 + "s";
+        }
+        return total / 3600 + "h " + total % 3600 / 60 + "m";
+    }
 
-            if (action.type == ActionType.SLEEP) {
-                scheduleSleep(sender, fileName, actions, i + 1, executed, skippedCount, action.seconds);
-                return; // Break loop, waiting for callback
+    private boolean handleRecover(CommandSender sender, String[] args) {
+        RunJournal journal = plugin.getRunJournal();
+        if (journal == null) {
+            sendMessage(sender, "recover-disabled");
+            return true;
+        }
+
+        if (args.length == 1) {
+            List<RunJournal.Entry> interrupted = journal.getInterrupted();
+            if (interrupted.isEmpty()) {
+                sendMessage(sender, "recover-empty");
+                return true;
+            }
+            sendMessage(sender, "recover-header");
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+            for (RunJournal.Entry entry : interrupted) {
+                sendMessage(sender, "recover-entry",
+                        Placeholder.unparsed("index", String.valueOf(entry.number())),
+                        Placeholder.unparsed("filename", entry.fileName()),
+                        Placeholder.unparsed("sender", entry.sender()),
+                        Placeholder.unparsed("started", format.format(new Date(entry.startedAt()))),
+                        Placeholder.unparsed("position", String.valueOf(entry.position())));
+            }
+            return true;
+        }
+
+        if (args.length == 3 && args[1].equalsIgnoreCase("discard")) {
+            List<RunJournal.Entry> discarded;
+            if (args[2].equalsIgnoreCase("all")) {
+                discarded = journal.getInterrupted();
             } else {
-                Bukkit.dispatchCommand(Bukkit.getConsoleSender(), action.command);
-                executed++;
+                RunJournal.Entry entry = findInterrupted(sender, journal, args[2]);
+                if (entry == null) {
+                    return true;
+                }
+                discarded = List.of(entry);
+            }
+            int count = 0;
+            for (RunJournal.Entry entry : discarded) {
+                if (journal.discard(entry)) {
+                    count++;
+                }
+            }
+            sendMessage(sender, "recover-discarded", Placeholder.unparsed("count", String.valueOf(count)));
+            return true;
+        }
+
+        if (args.length != 2) {
+            sendMessage(sender, "usage");
+            return false;
+        }
+
+        RunJournal.Entry entry = findInterrupted(sender, journal, args[1]);
+        if (entry == null) {
+            return true;
+        }
+        File batchFile = resolveBatchFile(sender, entry.fileName());
+        if (batchFile == null) {
+            return true;
+        }
+
+        TagResolver index = Placeholder.unparsed("index", String.valueOf(entry.number()));
+        TagResolver fileName = Placeholder.unparsed("filename", entry.fileName());
+        if (entry.passedForeach()) {
+            // Replaying the steps would go through the loop with whoever is online now
+            sendMessage(sender, "recover-foreach", index, fileName);
+            return true;
+        }
+        // Hashing reads the file and its includes, so check it async and resume on the main thread
+        BatchSettings settings = plugin.getSettings();
+        plugin.getTaskScheduler().runAsync(() -> {
+            boolean unchanged;
+            try {
+                unchanged = entry.matches(compiler.hashSources(batchFile, settings));
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not read batch file: " + entry.fileName(), e);
+                plugin.getTaskScheduler().runGlobal(() -> sendMessage(sender, "read-error"));
+                return;
+            }
+            plugin.getTaskScheduler().runGlobal(() -> {
+                if (!unchanged) {
+                    sendMessage(sender, "recover-changed", index, fileName);
+                } else if (journal.discard(entry)) {
+                    // The resumed run is journaled as a new run
+                    sendMessage(sender, "recover-resuming", index, fileName,
+                            Placeholder.unparsed("position", String.valueOf(entry.position())));
+                    startRun(sender, batchFile, entry.position());
+                }
+            });
+        });
+        return true;
+    }
+
+    private RunJournal.Entry findInterrupted(CommandSender sender, RunJournal journal, String rawIndex) {
+        RunJournal.Entry entry = null;
+        try {
+            entry = journal.getInterrupted(Integer.parseInt(rawIndex));
+        } catch (NumberFormatException ignored) {}
+
+        if (entry == null) {
+            sendMessage(sender, "recover-not-found", Placeholder.unparsed("index", rawIndex));
+        }
+        return entry;
+    }
+
+    private boolean handleStatus(CommandSender sender, String[] args) {
+        BatchRunManager manager = plugin.getRunManager();
+        if (args.length == 2) {
+            BatchRun run = findRun(sender, args[1]);
+            if (run != null) {
+                sendStatus(sender, run);
             }
+            return true;
         }
 
-        // Completion
-        if (skippedCount > 0) {
-            sendMessage(sender, "skipped-dangerous",
-                    Placeholder.unparsed("count", String.valueOf(skippedCount)),
-                    Placeholder.unparsed("filename", fileName));
+        if (manager.getRuns().isEmpty()) {
+            sendMessage(sender, "status-empty");
+            return true;
+        }
+        sendMessage(sender, "status-header");
+        if (plugin.getSettings().adaptiveDispatch) {
+            AdaptiveThrottle throttle = manager.getThrottle();
+            sendMessage(sender, throttle.isPaused() ? "status-throttle-paused" : "status-throttle",
+                    Placeholder.unparsed("limit", String.format("%.1f", throttle.limit())),
+                    Placeholder.unparsed("mspt", String.format("%.1f", throttle.lastMspt())),
+                    Placeholder.unparsed("tps", String.format("%.1f", throttle.lastTps())));
         }
-        sendMessage(sender, "success",
-                Placeholder.unparsed("count", String.valueOf(executed)),
-                Placeholder.unparsed("filename", fileName));
+        for (BatchRun run : manager.getRuns()) {
+            sendStatus(sender, run);
+        }
+        return true;
+    }
+
+    private void sendStatus(CommandSender sender, BatchRun run) {
+        long elapsedSeconds = (System.currentTimeMillis() - run.createdAt) / 1000;
+        sendMessage(sender, "status-entry",
+                Placeholder.unparsed("id", String.valueOf(run.id)),
+                Placeholder.unparsed("filename", run.fileName),
+                Placeholder.unparsed("state", run.state.name().toLowerCase()),
+                Placeholder.unparsed("count", String.valueOf(run.executed)),
+                Placeholder.unparsed("elapsed", elapsedSeconds + "s"));
     }
 
-    private void scheduleSleep(CommandSender sender, String fileName, List<BatchAction> actions, int nextIndex, int executed, int skippedCount, double seconds) {
-        String mode = plugin.getConfig().getString("settings.timer-mode", "ticks");
+    private boolean handleStats(CommandSender sender, String[] args) {
+        DispatchStats stats = plugin.getRunManager().getStats();
+        String action = args.length >= 2 ? args[1].toLowerCase() : "";
 
-        if ("realtime".equalsIgnoreCase(mode)) {
-            long delayMillis = (long) (seconds * 1000);
-            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+        if (action.equals("reset") && args.length == 2) {
+            stats.reset();
+            sendMessage(sender, "stats-reset");
+            return true;
+        }
+
+        if (action.equals("export") && args.length <= 3) {
+            String format = args.length == 3 ? args[2].toLowerCase() : "csv";
+            if (!format.equals("csv") && !format.equals("json")) {
+                sendMessage(sender, "usage");
+                return false;
+            }
+            // Copy on the main thread, write on an async thread
+            DispatchStats.Snapshot snapshot = stats.snapshot();
+            File folder = new File(plugin.getDataFolder(), "stats");
+            plugin.getTaskScheduler().runAsync(() -> {
                 try {
-                    Thread.sleep(delayMillis);
-                } catch (InterruptedException ignored) {}
-                Bukkit.getScheduler().runTask(plugin, () ->
-                        executeBatch(sender, fileName, actions, nextIndex, executed, skippedCount)
-                );
+                    File file = StatsExporter.export(snapshot, folder, format.equals("json"));
+                    plugin.getTaskScheduler().runGlobal(() ->
+                            sendMessage(sender, "stats-exported", Placeholder.unparsed("file", "stats/" + file.getName())));
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not export dispatch statistics", e);
+                    plugin.getTaskScheduler().runGlobal(() -> sendMessage(sender, "stats-export-failed"));
+                }
             });
-        } else {
-            // Default to ticks (20 ticks per second)
-            long delayTicks = (long) (seconds * 20);
-            Bukkit.getScheduler().runTaskLater(plugin, () ->
-                    executeBatch(sender, fileName, actions, nextIndex, executed, skippedCount),
-                    delayTicks
-            );
+            return true;
+        }
+
+        if (args.length != 1) {
+            sendMessage(sender, "usage");
+            return false;
+        }
+
+        DispatchStats.Snapshot snapshot = stats.snapshot();
+        if (snapshot.commands().isEmpty()) {
+            sendMessage(sender, "stats-empty");
+            return true;
+        }
+
+        DispatchStats.Histogram ticks = snapshot.ticks();
+        sendMessage(sender, "stats-header",
+                Placeholder.unparsed("elapsed", (System.currentTimeMillis() - snapshot.sinceMillis()) / 1000 + "s"),
+                Placeholder.unparsed("ticks", String.valueOf(ticks.count)),
+                Placeholder.unparsed("avg", StatsExporter.ms(ticks.totalNanos / Math.max(1, ticks.count))),
+                Placeholder.unparsed("p99", StatsExporter.ms(ticks.percentile(99))),
+                Placeholder.unparsed("max", StatsExporter.ms(ticks.maxNanos)));
+
+        List<String> names = snapshot.commandsByTotalTime();
+        for (String name : names.subList(0, Math.min(STATS_TOP_COMMANDS, names.size()))) {
+            DispatchStats.Histogram histogram = snapshot.commands().get(name);
+            sendMessage(sender, "stats-command",
+                    Placeholder.unparsed("command", name),
+                    Placeholder.unparsed("count", String.valueOf(histogram.count)),
+                    Placeholder.unparsed("total", StatsExporter.ms(histogram.totalNanos)),
+                    Placeholder.unparsed("avg", StatsExporter.ms(histogram.totalNanos / histogram.count)),
+                    Placeholder.unparsed("p99", StatsExporter.ms(histogram.percentile(99))),
+                    Placeholder.unparsed("max", StatsExporter.ms(histogram.maxNanos)));
+        }
+
+        List<DispatchStats.RunSummary> runs = snapshot.runs();
+        for (DispatchStats.RunSummary run : runs.subList(Math.max(0, runs.size() - STATS_RECENT_RUNS), runs.size())) {
+            sendMessage(sender, "stats-run",
+                    Placeholder.unparsed("id", String.valueOf(run.id())),
+                    Placeholder.unparsed("filename", run.fileName()),
+                    Placeholder.unparsed("outcome", run.outcome()),
+                    Placeholder.unparsed("count", String.valueOf(run.commands())),
+                    Placeholder.unparsed("total", StatsExporter.ms(run.dispatchNanos())),
+                    Placeholder.unparsed("elapsed", run.wallMillis() / 1000 + "s"));
+        }
+        return true;
+    }
+
+    private boolean handleRunControl(CommandSender sender, String[] args) {
+        if (args.length != 2) {
+            sendMessage(sender, "usage");
+            return false;
+        }
+
+        BatchRun run = findRun(sender, args[1]);
+        if (run == null) {
+            return true;
+        }
+
+        BatchRunManager manager = plugin.getRunManager();
+        TagResolver id = Placeholder.unparsed("id", String.valueOf(run.id));
+        TagResolver fileName = Placeholder.unparsed("filename", run.fileName);
+        switch (args[0].toLowerCase()) {
+            case "pause":
+                if (manager.pause(run)) {
+                    sendMessage(sender, "run-paused", id, fileName);
+                } else {
+                    sendMessage(sender, "run-already-paused", id, fileName);
+                }
+                break;
+            case "resume":
+                if (manager.resume(run)) {
+                    sendMessage(sender, "run-resumed", id, fileName);
+                } else {
+                    sendMessage(sender, "run-not-paused", id, fileName);
+                }
+                break;
+            default:
+                manager.cancel(run);
+                TagResolver count = Placeholder.unparsed("count", String.valueOf(run.executed));
+                sendMessage(sender, "run-cancelled", id, fileName, count);
+                if (run.sender != sender) {
+                    sendMessage(run.sender, "run-cancelled", id, fileName, count);
+                }
+                break;
+        }
+        return true;
+    }
+
+    private BatchRun findRun(CommandSender sender, String rawId) {
+        BatchRun run = null;
+        try {
+            run = plugin.getRunManager().getRun(Integer.parseInt(rawId.startsWith("#") ? rawId.substring(1) : rawId));
+        } catch (NumberFormatException ignored) {}
+
+        if (run == null) {
+            sendMessage(sender, "run-not-found", Placeholder.unparsed("id", rawId));
         }
+        return run;
     }
 }
@@ -5,13 +5,14 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.util.StringUtil;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 public class FileBatchTabCompleter implements TabCompleter {
 
+    private static final List<String> RUN_SUBCOMMANDS = List.of("status", "pause", "resume", "cancel");
+
     private final BatchCommands plugin;
 
     public FileBatchTabCompleter(BatchCommands plugin) {
@@ -25,29 +26,66 @@ public class FileBatchTabCompleter implements TabCompleter {
             // The list of potential completions
             List<String> completions = new ArrayList<>();
 
-            // The list of all batch file names
-            List<String> batchFileNames = new ArrayList<>();
-            File[] files = plugin.getBatchesFolder().listFiles();
-            String extension = plugin.getFileExtension();
-
-            if (files != null) {
-                for (File file : files) {
-                    // Check if it's a file and ends with the configured extension
-                    if (file.isFile() && file.getName().toLowerCase().endsWith(extension)) {
-                        batchFileNames.add(file.getName());
-                    }
-                }
+            // The list of all subcommands
+            List<String> subcommands = new ArrayList<>(RUN_SUBCOMMANDS);
+            subcommands.add("run");
+            subcommands.add("stats");
+            subcommands.add("compile");
+            subcommands.add("dryrun");
+            subcommands.add("recover");
+            if (sender.hasPermission("batchcommands.reload")) {
+                subcommands.add("reload");
             }
 
             // Copy all potential completions that start with the user's input
-            StringUtil.copyPartialMatches(args[0], batchFileNames, completions);
+            StringUtil.copyPartialMatches(args[0], subcommands, completions);
 
             // Sort the results alphabetically
             Collections.sort(completions);
 
+            // Batch files follow; the index is sorted and looks up the prefix without touching the disk
+            completions.addAll(plugin.getFileIndex().complete(args[0], plugin.getFileExtension()));
             return completions;
         }
 
+        // Complete run IDs for the run management subcommands
+        if (args.length == 2 && RUN_SUBCOMMANDS.contains(args[0].toLowerCase())) {
+            List<String> runIds = new ArrayList<>();
+            for (int id : plugin.getRunManager().getRunIds()) {
+                runIds.add(String.valueOf(id));
+            }
+            return StringUtil.copyPartialMatches(args[1], runIds, new ArrayList<>());
+        }
+
+        if (args.length == 2 && (args[0].equalsIgnoreCase("run") || args[0].equalsIgnoreCase("compile")
+                || args[0].equalsIgnoreCase("dryrun"))) {
+            return plugin.getFileIndex().complete(args[1], plugin.getFileExtension());
+        }
+
+        if (args[0].equalsIgnoreCase("recover") && plugin.getRunJournal() != null) {
+            List<String> numbers = new ArrayList<>();
+            for (RunJournal.Entry entry : plugin.getRunJournal().getInterrupted()) {
+                numbers.add(String.valueOf(entry.number()));
+            }
+            if (args.length == 2) {
+                numbers.add("discard");
+                return StringUtil.copyPartialMatches(args[1], numbers, new ArrayList<>());
+            }
+            if (args.length == 3 && args[1].equalsIgnoreCase("discard")) {
+                numbers.add("all");
+                return StringUtil.copyPartialMatches(args[2], numbers, new ArrayList<>());
+            }
+        }
+
+        if (args[0].equalsIgnoreCase("stats")) {
+            if (args.length == 2) {
+                return StringUtil.copyPartialMatches(args[1], List.of("reset", "export"), new ArrayList<>());
+            }
+            if (args.length == 3 && args[1].equalsIgnoreCase("export")) {
+                return StringUtil.copyPartialMatches(args[2], List.of("csv", "json"), new ArrayList<>());
+            }
+        }
+
         // Return an empty list for any other arguments
         return Collections.emptyList();
     }
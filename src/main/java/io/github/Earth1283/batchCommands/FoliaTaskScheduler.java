@@ -0,0 +1,42 @@
+package io.github.Earth1283.batchCommands;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Schedules work on Folia: global work on the {@link io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler},
+ * background work on the {@link io.papermc.paper.threadedregions.scheduler.AsyncScheduler}.
+ * The global region ticks 20 times per second like the main thread does elsewhere, so tick-based
+ * and realtime sleeps behave the same on both.
+ */
+final class FoliaTaskScheduler implements TaskScheduler {
+
+    private final Plugin plugin;
+
+    FoliaTaskScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getAsyncScheduler().runNow(plugin, scheduled -> task.run());
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        ScheduledTask scheduled = Bukkit.getGlobalRegionScheduler()
+                .runAtFixedRate(plugin, ignored -> task.run(), Math.max(1, delayTicks), periodTicks);
+        return scheduled::cancel;
+    }
+
+    @Override
+    public boolean isGlobalThread() {
+        return Bukkit.isGlobalTickThread();
+    }
+}
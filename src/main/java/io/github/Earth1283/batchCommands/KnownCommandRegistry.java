@@ -0,0 +1,113 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.Command;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
+import org.bukkit.event.server.ServerLoadEvent;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps an immutable snapshot of every command label known to the server's command map,
+ * including aliases and namespaced forms such as {@code minecraft:give}.
+ * The snapshot is rebuilt only when the set of commands can change (plugins being enabled or
+ * disabled, or the server finishing a load) and swapped atomically, so readers on any thread
+ * always see a complete set without doing any work of their own.
+ */
+public class KnownCommandRegistry implements Listener {
+
+    private final BatchCommands plugin;
+    private volatile Set<String> knownCommands = Collections.emptySet();
+    // Only read on the main thread, where commands are dispatched
+    private Map<String, Command> commandsByLabel = Collections.emptyMap();
+    private long generation = 0;
+    private boolean refreshScheduled = false;
+
+    public KnownCommandRegistry(BatchCommands plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Gets the current snapshot of known command labels (lowercase). The returned set never changes;
+     * a refresh replaces it with a new instance.
+     * @return The known command labels.
+     */
+    public Set<String> getKnownCommands() {
+        return knownCommands;
+    }
+
+    /**
+     * Looks up the command registered for a label in the current snapshot. Must be called on the main thread.
+     * @param label The lowercase label, e.g. {@code give} or {@code minecraft:give}.
+     * @return The command, or null if the label is unknown.
+     */
+    Command getCommand(String label) {
+        return commandsByLabel.get(label);
+    }
+
+    /**
+     * @return A number that changes whenever the snapshot is rebuilt, so lookups cached elsewhere
+     *         can tell they are outdated. Must be called on the main thread.
+     */
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Rebuilds the snapshot from the command map. Must be called on the main thread.
+     */
+    public void refresh() {
+        Set<String> commands = new HashSet<>();
+        Map<String, Command> byLabel = new HashMap<>();
+        for (Map.Entry<String, Command> entry : Bukkit.getCommandMap().getKnownCommands().entrySet()) {
+            String label = entry.getKey().toLowerCase();
+            commands.add(label);
+            byLabel.putIfAbsent(label, entry.getValue());
+        }
+        knownCommands = Collections.unmodifiableSet(commands);
+        commandsByLabel = byLabel;
+        generation++;
+
+        // Cached lint reports were produced against the old command set
+        plugin.getBatchCache().clear();
+    }
+
+    /**
+     * Coalesces bursts of events (e.g. every plugin enabling at startup) into a single rebuild on the next tick.
+     */
+    private void scheduleRefresh() {
+        if (refreshScheduled || !plugin.isEnabled()) {
+            return;
+        }
+        refreshScheduled = true;
+        plugin.getTaskScheduler().runGlobal(() -> {
+            refreshScheduled = false;
+            refresh();
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        scheduleRefresh();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        if (event.getPlugin() != plugin) {
+            scheduleRefresh();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onServerLoad(ServerLoadEvent event) {
+        refresh();
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.Earth1283.batchCommands;
+
+/**
+ * Turns raw batch file lines into {@link BatchAction}s in a single scan.
+ * <p>
+ * Lines are trimmed by index instead of with regular expressions, and substrings are only taken
+ * where the result is kept: the trimmed line (which is the line itself when it has no surrounding
+ * whitespace) and the command name (which is also the line itself for commands without arguments).
+ */
+final class LineTokenizer {
+
+    private static final String SLEEP = "!sleep";
+    private static final String INCLUDE = "!include";
+    private static final String REPEAT = "!repeat";
+    private static final String FOREACH = "!foreach";
+    private static final String END = "!end";
+
+    /** The targets of {@code !foreach}. */
+    static final String PLAYER = "player";
+    static final String WORLD = "world";
+
+    private LineTokenizer() {
+    }
+
+    /**
+     * Parses one raw line.
+     * @return The parsed line, or null for blank lines and comments.
+     */
+    static BatchAction parse(String line) {
+        int start = 0;
+        int end = line.length();
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        // Ignore empty lines and Python-style comments (#)
+        if (start == end || line.charAt(start) == '#') {
+            return null;
+        }
+
+        String trimmed = line.substring(start, end);
+        int length = trimmed.length();
+
+        int nameStart = trimmed.charAt(0) == '/' ? 1 : 0;
+        int nameEnd = skipWord(trimmed, nameStart);
+        String name = lowercase(trimmed, nameStart, nameEnd);
+
+        if (trimmed.charAt(0) != '!') {
+            return new BatchAction(BatchAction.Type.COMMAND, trimmed, name, nameStart, nameEnd, 0, null);
+        }
+
+        if (name.equals(INCLUDE)) {
+            // The rest of the line is the file name, which may contain spaces
+            int argStart = skipWhitespace(trimmed, nameEnd);
+            String argument = argStart == length ? null : trimmed.substring(argStart);
+            return new BatchAction(BatchAction.Type.INCLUDE, trimmed, name, nameStart, nameEnd, 0, argument);
+        }
+
+        if (name.equals(REPEAT)) {
+            int argStart = skipWhitespace(trimmed, nameEnd);
+            if (argStart == length) {
+                return new BatchAction(BatchAction.Type.REPEAT, trimmed, name, nameStart, nameEnd, 0, null);
+            }
+            String argument = trimmed.substring(argStart, skipWord(trimmed, argStart));
+            try {
+                int count = Integer.parseInt(argument);
+                if (count > 0) {
+                    return new BatchAction(BatchAction.Type.REPEAT, trimmed, name, nameStart, nameEnd, count, null);
+                }
+            } catch (NumberFormatException ignored) {
+                // Reported by the linter
+            }
+            return new BatchAction(BatchAction.Type.REPEAT, trimmed, name, nameStart, nameEnd, 0, argument);
+        }
+
+        if (name.equals(FOREACH)) {
+            int argStart = skipWhitespace(trimmed, nameEnd);
+            String argument = argStart == length ? null : lowercase(trimmed, argStart, skipWord(trimmed, argStart));
+            return new BatchAction(BatchAction.Type.FOREACH, trimmed, name, nameStart, nameEnd, 0, argument);
+        }
+
+        if (name.equals(END)) {
+            return new BatchAction(BatchAction.Type.END, trimmed, name, nameStart, nameEnd, 0, null);
+        }
+
+        // Anything starting with !sleep is a sleep, as it always has been
+        if (!trimmed.regionMatches(true, 0, SLEEP, 0, SLEEP.length())) {
+            return new BatchAction(BatchAction.Type.UNKNOWN_META, trimmed, name, nameStart, nameEnd, 0, null);
+        }
+
+        int argStart = skipWhitespace(trimmed, nameEnd);
+        if (argStart == length) {
+            return new BatchAction(BatchAction.Type.INVALID_SLEEP, trimmed, name, nameStart, nameEnd, 0, null);
+        }
+        String argument = trimmed.substring(argStart, skipWord(trimmed, argStart));
+        try {
+            double seconds = Double.parseDouble(argument);
+            return new BatchAction(BatchAction.Type.SLEEP, trimmed, name, nameStart, nameEnd, seconds, null);
+        } catch (NumberFormatException e) {
+            return new BatchAction(BatchAction.Type.INVALID_SLEEP, trimmed, name, nameStart, nameEnd, 0, argument);
+        }
+    }
+
+    private static int skipWord(String s, int from) {
+        while (from < s.length() && !Character.isWhitespace(s.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int skipWhitespace(String s, int from) {
+        while (from < s.length() && Character.isWhitespace(s.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Lowercases a range of the string, without allocating if it is already the whole, lowercase string.
+     */
+    private static String lowercase(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (Character.toLowerCase(s.charAt(i)) != s.charAt(i)) {
+                return s.substring(from, to).toLowerCase();
+            }
+        }
+        return s.substring(from, to);
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.Earth1283.batchCommands;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The warnings of a batch, grouped by check and message and rendered into a single chat component.
+ * <p>
+ * Thousands of warnings for the same mistake collapse into one entry with a count and the first few
+ * line numbers, and only the largest groups are shown. The full list is written to a log file in
+ * {@code reports/}. Building a report parses MiniMessage and may write a file, so do it on an async
+ * thread; the main thread only sends {@link #summary()}.
+ */
+final class LintReport {
+
+    // The part of a report's name after the batch file name, e.g. "20250101-120000-000.log"
+    private static final Pattern REPORT_SUFFIX = Pattern.compile("\\d{8}-\\d{6}-\\d{3}\\.log");
+
+    /**
+     * Warnings with the same check, file and message.
+     */
+    private static final class Group {
+        final String group;
+        final String file;
+        final String message;
+        final int[] lines;
+        int lineCount = 0;
+        int count = 0;
+
+        Group(LintWarning warning, int maxLines) {
+            this.group = warning.group();
+            this.file = warning.file();
+            this.message = warning.message();
+            this.lines = new int[maxLines];
+        }
+
+        void add(LintWarning warning) {
+            count++;
+            if (warning.line() > 0 && lineCount < lines.length) {
+                lines[lineCount++] = warning.line();
+            }
+        }
+    }
+
+    private record GroupKey(String group, String file, String message) {}
+
+    private final Component summary;
+
+    private LintReport(Component summary) {
+        this.summary = summary;
+    }
+
+    /**
+     * Groups, logs and renders the warnings of a batch.
+     * @param fileName The display name of the batch file, used for the log file.
+     * @param warnings The warnings in line order.
+     * @param invalidSleepLines Lines with an invalid {@code !sleep}, reported with the {@code invalid-sleep} message.
+     * @param reportsFolder The folder log files are written to.
+     * @return The report, or null if there is nothing to report.
+     */
+    static LintReport create(String fileName, List<LintWarning> warnings, List<String> invalidSleepLines,
+                             BatchSettings settings, File reportsFolder, Logger logger) {
+        if (warnings.isEmpty() && invalidSleepLines.isEmpty()) {
+            return null;
+        }
+
+        Map<GroupKey, Group> byKey = new LinkedHashMap<>();
+        for (LintWarning warning : warnings) {
+            byKey.computeIfAbsent(new GroupKey(warning.group(), warning.file(), warning.message()),
+                    key -> new Group(warning, settings.reportMaxLineNumbers)).add(warning);
+        }
+        // Largest groups first; groups of equal size keep the order of their first line
+        List<Group> groups = new ArrayList<>(byKey.values());
+        groups.sort((a, b) -> Integer.compare(b.count, a.count));
+
+        File logFile = null;
+        if (settings.reportWriteFiles && !warnings.isEmpty()) {
+            try {
+                logFile = write(fileName, warnings, invalidSleepLines, reportsFolder);
+                prune(fileName, reportsFolder, settings.reportMaxFiles);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not write the lint report of " + fileName, e);
+            }
+        }
+
+        Component summary = render(warnings.size(), groups, invalidSleepLines, logFile, settings);
+        return new LintReport(summary);
+    }
+
+    private static Component render(int total, List<Group> groups, List<String> invalidSleepLines,
+                                    File logFile, BatchSettings settings) {
+        MiniMessage miniMessage = MiniMessage.miniMessage();
+        List<Component> parts = new ArrayList<>();
+
+        if (total > 0) {
+            StringBuilder text = new StringBuilder("<yellow><b>Linter Warnings:</b> ").append(total)
+                    .append(" warning(s)");
+            if (groups.size() > 1) {
+                text.append(" in ").append(groups.size()).append(" groups");
+            }
+            int shown = Math.min(groups.size(), settings.reportMaxGroups);
+            for (int i = 0; i < shown; i++) {
+                Group group = groups.get(i);
+                text.append("\n<yellow> - <gray>[").append(group.group).append("]</gray> ");
+                if (group.file != null) {
+                    text.append(miniMessage.escapeTags(group.file)).append(": ");
+                }
+                text.append(miniMessage.escapeTags(group.message));
+                if (group.count > 1) {
+                    text.append(" <gray>x").append(group.count).append("</gray>");
+                }
+                if (group.lineCount > 0) {
+                    text.append(" <gray>(").append(group.count > 1 ? "lines " : "line ");
+                    for (int l = 0; l < group.lineCount; l++) {
+                        text.append(l == 0 ? "" : ", ").append(group.lines[l]);
+                    }
+                    text.append(group.count > group.lineCount ? ", ...)" : ")").append("</gray>");
+                }
+            }
+            if (groups.size() > shown) {
+                text.append("\n<gray>... and ").append(groups.size() - shown).append(" more group(s).");
+            }
+            if (logFile != null) {
+                text.append("\n<gray>Full report: ").append(miniMessage.escapeTags(
+                        logFile.getParentFile().getName() + "/" + logFile.getName()));
+            }
+            parts.add(miniMessage.deserialize(text.toString()));
+        }
+
+        MessageTemplate invalidSleep = settings.message("invalid-sleep");
+        if (invalidSleep != null && !invalidSleep.isEmpty()) {
+            int shown = Math.min(invalidSleepLines.size(), settings.reportMaxLineNumbers);
+            for (int i = 0; i < shown; i++) {
+                parts.add(invalidSleep.render(Placeholder.unparsed("line", invalidSleepLines.get(i))));
+            }
+            if (invalidSleepLines.size() > shown) {
+                parts.add(miniMessage.deserialize("<gray>... and " + (invalidSleepLines.size() - shown) + " more invalid !sleep line(s)."));
+            }
+        }
+        return parts.size() == 1 ? parts.get(0) : Component.join(JoinConfiguration.newlines(), parts);
+    }
+
+    private static File write(String fileName, List<LintWarning> warnings, List<String> invalidSleepLines,
+                              File folder) throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        File file = new File(folder, fileName.replace('/', '_') + "-" + timestamp + ".log");
+
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("# Lint report of " + fileName + ": " + warnings.size() + " warning(s)\n");
+            for (LintWarning warning : warnings) {
+                writer.write("[" + warning.group() + "] " + warning + "\n");
+            }
+            for (String line : invalidSleepLines) {
+                writer.write("[INVALID_SLEEP] " + line + "\n");
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Deletes the oldest reports of a batch file, keeping the newest {@code maxFiles}.
+     * @param maxFiles The number of reports to keep per batch file, 0 to keep all of them.
+     */
+    private static void prune(String fileName, File folder, int maxFiles) throws IOException {
+        if (maxFiles <= 0) {
+            return;
+        }
+        String prefix = fileName.replace('/', '_') + "-";
+        File[] files = folder.listFiles((dir, name) -> name.startsWith(prefix)
+                && REPORT_SUFFIX.matcher(name.substring(prefix.length())).matches());
+        if (files == null || files.length <= maxFiles) {
+            return;
+        }
+        // The timestamps sort chronologically by name
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (int i = 0; i < files.length - maxFiles; i++) {
+            Files.deleteIfExists(files[i].toPath());
+        }
+    }
+
+    /**
+     * @return The pre-rendered chat summary.
+     */
+    Component summary() {
+        return summary;
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.Earth1283.batchCommands;
+
+/**
+ * A problem found while compiling a batch file.
+ * @param file The included file the problem is in, relative to the batches folder, or null for the compiled file itself.
+ * @param line The line number, or 0 if the problem concerns the whole file.
+ * @param check The linter check that reported it, or null for problems found by the compiler itself,
+ *              such as unresolved includes, unbalanced loops or a linter timeout.
+ * @param message A plain-text description of the problem.
+ */
+record LintWarning(String file, int line, BatchLinter.LintCheck check, String message) {
+
+    /**
+     * @return This warning attributed to an included file, unless it already names a more deeply included one.
+     */
+    LintWarning inFile(String name) {
+        return file == null ? new LintWarning(name, line, check, message) : this;
+    }
+
+    /**
+     * @return The name of the group this warning is reported in, e.g. {@code EXISTENCE}.
+     */
+    String group() {
+        return check == null ? "COMPILER" : check.name();
+    }
+
+    @Override
+    public String toString() {
+        return (file == null ? "" : file + ": ") + (line > 0 ? "Line " + line + ": " : "") + message;
+    }
+}
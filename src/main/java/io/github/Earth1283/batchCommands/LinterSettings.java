@@ -0,0 +1,91 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * An immutable, typed view of {@code linter.yml} plus the security blacklist the linter checks against.
+ * Built once per (re)load so linting never has to look anything up in the YAML tree.
+ */
+public final class LinterSettings {
+
+    public final boolean enabled;
+    public final boolean checkCommandExistence;
+    public final boolean suggestAlternatives;
+    public final boolean warnOnBlacklisted;
+    public final boolean warnUnknownMeta;
+    public final boolean warnInvalidSyntax;
+    public final boolean warnEmptyFile;
+
+    public final long maxLintTimeMs;
+    public final boolean cancelOnTimeout;
+    public final boolean debugMode;
+    public final boolean parallel;
+    public final int parallelMinLines;
+    public final int memoMaxLines;
+    public final List<BatchLinter.LintCheck> order;
+
+    /** Lowercase blacklisted command names. */
+    public final Set<String> blacklist;
+
+    /** The compiled {@code custom-patterns} rules. */
+    final CustomPatternMatcher customPatterns;
+
+    private LinterSettings(FileConfiguration linterConfig, Set<String> blacklist, Logger logger) {
+        this.enabled = linterConfig.getBoolean("enabled", true);
+        this.checkCommandExistence = linterConfig.getBoolean("rules.check-command-existence", true);
+        this.suggestAlternatives = linterConfig.getBoolean("rules.suggest-alternatives", true);
+        this.warnOnBlacklisted = linterConfig.getBoolean("rules.warn-on-blacklisted", true);
+        this.warnUnknownMeta = linterConfig.getBoolean("rules.warn-unknown-meta", true);
+        this.warnInvalidSyntax = linterConfig.getBoolean("rules.warn-invalid-syntax", true);
+        this.warnEmptyFile = linterConfig.getBoolean("rules.warn-empty-file", true);
+
+        this.maxLintTimeMs = linterConfig.getLong("execution.max-lint-time-ms", 100);
+        this.cancelOnTimeout = "CANCEL_EXECUTION".equalsIgnoreCase(linterConfig.getString("execution.on-timeout", "SKIP_LINTER"));
+        this.debugMode = linterConfig.getBoolean("execution.debug-mode", false);
+        this.parallel = linterConfig.getBoolean("execution.parallel", true);
+        this.parallelMinLines = Math.max(1, linterConfig.getInt("execution.parallel-min-lines", 2000));
+        this.memoMaxLines = Math.max(0, linterConfig.getInt("execution.memo-max-lines", 50000));
+
+        List<BatchLinter.LintCheck> order = new ArrayList<>();
+        for (String s : linterConfig.getStringList("execution.lint-order")) {
+            try {
+                order.add(BatchLinter.LintCheck.valueOf(s));
+            } catch (IllegalArgumentException ignored) {}
+        }
+
+        // Only apply defaults if the key is missing from the config entirely
+        if (order.isEmpty() && !linterConfig.contains("execution.lint-order")) {
+            order.add(BatchLinter.LintCheck.META_SYNTAX);
+            order.add(BatchLinter.LintCheck.UNKNOWN_META);
+            order.add(BatchLinter.LintCheck.BLACKLIST);
+            order.add(BatchLinter.LintCheck.EXISTENCE);
+            order.add(BatchLinter.LintCheck.CUSTOM_PATTERN);
+        }
+        this.blacklist = blacklist;
+        this.customPatterns = CustomPatternMatcher.load(linterConfig.getList("custom-patterns"), logger);
+
+        // linter.yml files written before CUSTOM_PATTERN existed list every other check, and are not
+        // replaced on update, so configured patterns would otherwise never report anything
+        if (!customPatterns.isEmpty() && !order.contains(BatchLinter.LintCheck.CUSTOM_PATTERN)) {
+            logger.warning("custom-patterns are configured, but CUSTOM_PATTERN is missing from execution.lint-order"
+                    + " in linter.yml; checking them last. Add CUSTOM_PATTERN to lint-order to choose its position.");
+            order.add(BatchLinter.LintCheck.CUSTOM_PATTERN);
+        }
+        this.order = List.copyOf(order);
+    }
+
+    static LinterSettings load(FileConfiguration linterConfig, List<String> blacklist, Logger logger) {
+        Set<String> lowercase = new HashSet<>();
+        for (String blocked : blacklist) {
+            lowercase.add(blocked.toLowerCase());
+        }
+        return new LinterSettings(linterConfig, Collections.unmodifiableSet(lowercase), logger);
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.Earth1283.batchCommands;
+
+/**
+ * A cursor over a fully compiled batch.
+ */
+final class ListCursor implements BatchCursor {
+
+    private final CompiledBatch batch;
+    private int index = 0;
+
+    ListCursor(CompiledBatch batch) {
+        this.batch = batch;
+    }
+
+    @Override
+    public BatchAction peek() {
+        return index < batch.actions.size() ? batch.actions.get(index) : null;
+    }
+
+    @Override
+    public void advance() {
+        index++;
+    }
+
+    @Override
+    public int skippedCount() {
+        return batch.skippedCount;
+    }
+
+    @Override
+    public LintReport report() {
+        // Compiled batches report their warnings before execution starts
+        return null;
+    }
+}
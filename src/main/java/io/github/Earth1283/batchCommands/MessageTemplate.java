@@ -0,0 +1,44 @@
+package io.github.Earth1283.batchCommands;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
+
+/**
+ * A configured message with its prefix, parsed once when the configuration is loaded.
+ * Messages sent without placeholders reuse the pre-parsed component; only placeholder
+ * substitution requires parsing the message body again, never the prefix.
+ */
+final class MessageTemplate {
+
+    private final MiniMessage miniMessage;
+    private final String body;
+    private final Component prefix;
+    private final Component parsed;
+
+    MessageTemplate(MiniMessage miniMessage, Component prefix, String body) {
+        this.miniMessage = miniMessage;
+        this.body = body;
+        this.prefix = prefix;
+        this.parsed = body.isEmpty() ? null : join(miniMessage.deserialize(body));
+    }
+
+    /**
+     * @return True if the message was configured as an empty string and should not be sent.
+     */
+    boolean isEmpty() {
+        return parsed == null;
+    }
+
+    Component render(TagResolver... placeholders) {
+        if (placeholders.length == 0) {
+            return parsed;
+        }
+        return join(miniMessage.deserialize(body, placeholders));
+    }
+
+    private Component join(Component message) {
+        // Siblings under an unstyled parent, so the prefix style cannot leak into the message
+        return Component.text().append(prefix).append(message).build();
+    }
+}
@@ -0,0 +1,288 @@
+package io.github.Earth1283.batchCommands;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads and writes {@code .batchc} files: a {@link CompiledBatch} stored next to its source, so
+ * large batches can start without being parsed and linted again.
+ * <p>
+ * Layout (big-endian): magic, format version, source size, SHA-256 of the source, settings
+ * fingerprint, a table of unique strings, the actions (referring to strings by index), the skipped
+ * count, the warnings (likewise), the invalid sleep lines and the lint timings.
+ * <p>
+ * A precompiled file is only used if it is at least as new as its source, the source's size and hash
+ * still match, and it was compiled with the same blacklist, linter rules and known commands.
+ * Otherwise callers fall back to compiling the text. All methods do file I/O; call them from an async thread.
+ */
+final class PrecompiledBatch {
+
+    static final String EXTENSION = ".batchc";
+
+    private static final int MAGIC = 0x42435043; // "BCPC"
+    private static final short VERSION = 2;
+    private static final int HASH_LENGTH = 32;
+
+    private PrecompiledBatch() {
+    }
+
+    /**
+     * @return The precompiled file belonging to a batch file.
+     */
+    static File fileFor(File source) {
+        return new File(source.getParentFile(), source.getName() + EXTENSION);
+    }
+
+    /**
+     * Combines everything besides the source text that decides what a compilation produces.
+     */
+    static long fingerprint(BatchSettings settings, Set<String> knownCommands) {
+        LinterSettings linter = settings.linter;
+        long hash = Arrays.hashCode(new boolean[]{settings.removeDangerous, linter.enabled, linter.checkCommandExistence,
+                linter.suggestAlternatives, linter.warnOnBlacklisted, linter.warnUnknownMeta,
+                linter.warnInvalidSyntax, linter.warnEmptyFile});
+        for (BatchLinter.LintCheck check : linter.order) {
+            hash = 31 * hash + check.name().hashCode();
+        }
+        hash = 31 * hash + linter.blacklist.hashCode();
+        hash = 31 * hash + linter.customPatterns.fingerprint();
+        // Set hash codes do not depend on iteration order, so an unchanged server gives the same value
+        return (hash << 32) ^ knownCommands.hashCode() ^ ((long) knownCommands.size() << 20);
+    }
+
+    /**
+     * @return False if the batch includes other files or contains loops. The format stores a flat
+     *         list of actions, and an included file could change without the precompiled file noticing.
+     */
+    static boolean supports(CompiledBatch batch) {
+        if (!batch.dependencies.isEmpty()) {
+            return false;
+        }
+        for (BatchAction action : batch.actions) {
+            if (action.segment != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the precompiled file for a source. The file is replaced atomically, so a concurrent
+     * reader sees either the old or the new version.
+     * @return The written file.
+     */
+    static File write(File source, CompiledBatch batch, long fingerprint) throws IOException {
+        if (!supports(batch)) {
+            throw new IllegalArgumentException("Batches with includes or loops cannot be precompiled");
+        }
+        byte[] hash = hash(source);
+
+        // Intern every string; generated batches repeat the same lines many times
+        Map<String, Integer> indices = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (BatchAction action : batch.actions) {
+            intern(action.command, indices, strings);
+            intern(action.name, indices, strings);
+            intern(action.argument, indices, strings);
+        }
+        for (LintWarning warning : batch.warnings) {
+            intern(warning.file(), indices, strings);
+            intern(warning.message(), indices, strings);
+        }
+        batch.invalidSleepLines.forEach(line -> intern(line, indices, strings));
+
+        File target = fileFor(source);
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(source.length());
+            out.write(hash);
+            out.writeLong(fingerprint);
+
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(batch.actions.size());
+            for (BatchAction action : batch.actions) {
+                out.writeByte(action.type.ordinal());
+                out.writeInt(index(action.command, indices));
+                out.writeInt(index(action.name, indices));
+                out.writeInt(action.nameStart);
+                out.writeInt(action.nameEnd);
+                out.writeDouble(action.seconds);
+                out.writeInt(index(action.argument, indices));
+            }
+
+            out.writeInt(batch.skippedCount);
+            out.writeInt(batch.warnings.size());
+            for (LintWarning warning : batch.warnings) {
+                out.writeInt(index(warning.file(), indices));
+                out.writeInt(warning.line());
+                out.writeByte(warning.check() == null ? -1 : warning.check().ordinal());
+                out.writeInt(index(warning.message(), indices));
+            }
+            writeIndices(out, batch.invalidSleepLines, indices);
+
+            out.writeInt(batch.timings.size());
+            for (Map.Entry<BatchLinter.LintCheck, Long> entry : batch.timings.entrySet()) {
+                out.writeByte(entry.getKey().ordinal());
+                out.writeLong(entry.getValue());
+            }
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    /**
+     * @return True if a precompiled file exists that is not older than its source. Only checks timestamps.
+     */
+    static boolean isFresh(File source) {
+        File compiled = fileFor(source);
+        return compiled.isFile() && compiled.lastModified() >= source.lastModified();
+    }
+
+    /**
+     * Loads the precompiled version of a source through a memory-mapped channel.
+     * @return The compiled batch, or null if there is no usable precompiled file.
+     * @throws IOException if the precompiled file exists but could not be read.
+     */
+    static CompiledBatch load(File source, long fingerprint) throws IOException {
+        if (!isFresh(source)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(fileFor(source).toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < 14 || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                return null;
+            }
+            if (buffer.getLong() != source.length()) {
+                return null;
+            }
+            byte[] storedHash = new byte[HASH_LENGTH];
+            buffer.get(storedHash);
+            if (buffer.getLong() != fingerprint || !Arrays.equals(storedHash, hash(source))) {
+                return null;
+            }
+
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            BatchAction.Type[] types = BatchAction.Type.values();
+            int actionCount = buffer.getInt();
+            List<BatchAction> actions = new ArrayList<>(actionCount);
+            for (int i = 0; i < actionCount; i++) {
+                BatchAction.Type type = types[buffer.get()];
+                String command = string(strings, buffer.getInt());
+                String name = string(strings, buffer.getInt());
+                int nameStart = buffer.getInt();
+                int nameEnd = buffer.getInt();
+                double seconds = buffer.getDouble();
+                String argument = string(strings, buffer.getInt());
+                actions.add(new BatchAction(type, command, name, nameStart, nameEnd, seconds, argument));
+            }
+
+            int skippedCount = buffer.getInt();
+            BatchLinter.LintCheck[] checks = BatchLinter.LintCheck.values();
+            int warningCount = buffer.getInt();
+            List<LintWarning> warnings = new ArrayList<>(warningCount);
+            for (int i = 0; i < warningCount; i++) {
+                String file = string(strings, buffer.getInt());
+                int line = buffer.getInt();
+                byte check = buffer.get();
+                warnings.add(new LintWarning(file, line, check < 0 ? null : checks[check], strings[buffer.getInt()]));
+            }
+            List<String> invalidSleepLines = readIndices(buffer, strings);
+
+            EnumMap<BatchLinter.LintCheck, Long> timings = new EnumMap<>(BatchLinter.LintCheck.class);
+            int timingCount = buffer.getInt();
+            for (int i = 0; i < timingCount; i++) {
+                timings.put(checks[buffer.get()], buffer.getLong());
+            }
+
+            return new CompiledBatch(actions, warnings, timings, invalidSleepLines, skippedCount);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Precompiled file is truncated or corrupt: " + fileFor(source).getName(), e);
+        }
+    }
+
+    static byte[] hash(File source) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void intern(String string, Map<String, Integer> indices, List<String> strings) {
+        if (string != null && !indices.containsKey(string)) {
+            indices.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    private static int index(String string, Map<String, Integer> indices) {
+        return string == null ? -1 : indices.get(string);
+    }
+
+    private static String string(String[] strings, int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    private static void writeIndices(DataOutputStream out, List<String> values, Map<String, Integer> indices) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeInt(index(value, indices));
+        }
+    }
+
+    private static List<String> readIndices(MappedByteBuffer buffer, String[] strings) {
+        int count = buffer.getInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(strings[buffer.getInt()]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,402 @@
+package io.github.Earth1283.batchCommands;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only log of the progress of every run, so batches interrupted by a restart or crash can
+ * be resumed where they stopped.
+ * <p>
+ * The main thread only queues records; a background thread writes everything queued since its last
+ * commit in one write and forces it to disk. A run's progress is its latest position only, however
+ * many commands ran in between. Positions count the steps taken by the run's cursor, with includes
+ * and loops expanded, so resuming means replaying the same number of steps without dispatching them.
+ * A {@code !foreach} takes as many steps as there were players or worlds, so runs that got past one
+ * cannot be resumed this way; the journal records the step at which each run reached its first one.
+ * <p>
+ * Layout (big-endian): magic and format version, then records of a type byte and a run key. Start
+ * records add the start time, file name, sender and the hash of the source with its includes,
+ * progress records the position, foreach records the step of the first {@code !foreach}. A record cut off by a crash ends the log. On startup the log is replaced by just the
+ * runs that never ended, which are then offered for recovery.
+ */
+final class RunJournal implements AutoCloseable {
+
+    /**
+     * A run that was interrupted before it ended.
+     * @param number The number users refer to it by; stays the same until the next restart.
+     * @param position The number of steps known to be done.
+     * @param foreachStep The number of steps before the first {@code !foreach}, or -1 if none was reached.
+     */
+    record Entry(int number, long key, String fileName, String sender, long startedAt, byte[] hash, long position,
+                 long foreachStep) {
+
+        private Entry at(long position) {
+            return new Entry(number, key, fileName, sender, startedAt, hash, position, foreachStep);
+        }
+
+        private Entry withForeach(long foreachStep) {
+            return new Entry(number, key, fileName, sender, startedAt, hash, position, foreachStep);
+        }
+
+        /**
+         * @param hash The current {@link BatchCompiler#hashSources hash} of the file and its includes.
+         * @return True if none of them changed since the run started.
+         */
+        boolean matches(byte[] hash) {
+            return this.hash.length > 0 && Arrays.equals(this.hash, hash);
+        }
+
+        /**
+         * @return True if the run got past a {@code !foreach}, so its position no longer matches the steps
+         *         a new run would take.
+         */
+        boolean passedForeach() {
+            return foreachStep >= 0 && position > foreachStep;
+        }
+    }
+
+    private record Start(long key, String fileName, String sender, long startedAt, byte[] hash) {}
+
+    private static final int MAGIC = 0x42434A4C; // "BCJL"
+    private static final short VERSION = 2;
+
+    private static final byte START = 1;
+    private static final byte PROGRESS = 2;
+    private static final byte END = 3;
+    private static final byte FOREACH = 4;
+
+    private final Path file;
+    private final long commitIntervalMillis;
+    private final Logger logger;
+
+    // Written by the main thread, drained by the writer thread
+    private final ConcurrentLinkedQueue<Start> starts = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<Long, Long> positions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Long> foreachSteps = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Long> ends = new ConcurrentLinkedQueue<>();
+
+    // Copy-on-write, since tab completion may read it from other threads on Folia
+    private volatile List<Entry> interrupted;
+
+    // Wakes the writer thread early on close; not interrupting it keeps the channel open
+    private final Object signal = new Object();
+    private FileChannel channel;
+    private Thread thread;
+    private volatile boolean closed = false;
+
+    private RunJournal(Path file, long commitIntervalMillis, List<Entry> interrupted, Logger logger) {
+        this.file = file;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.interrupted = interrupted;
+        this.logger = logger;
+    }
+
+    /**
+     * Reads the journal, compacts it to the interrupted runs and starts the writer thread.
+     * @return The journal, or null (after logging why) if it cannot be written.
+     */
+    static RunJournal open(Path file, long commitIntervalMillis, Logger logger) {
+        Map<Long, Entry> entries = read(file, logger);
+        List<Entry> interrupted = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            interrupted.add(new Entry(interrupted.size() + 1, entry.key(), entry.fileName(), entry.sender(),
+                    entry.startedAt(), entry.hash(), entry.position(), entry.foreachStep()));
+        }
+
+        RunJournal journal = new RunJournal(file, Math.max(1, commitIntervalMillis), List.copyOf(interrupted), logger);
+        try {
+            journal.compact(interrupted);
+            journal.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not open the run journal; interrupted batches cannot be resumed", e);
+            return null;
+        }
+
+        journal.thread = new Thread(journal::run, "BatchCommands-Journal");
+        journal.thread.setDaemon(true);
+        journal.thread.start();
+        return journal;
+    }
+
+    /**
+     * Records the start of a run.
+     * @param hash The {@link BatchCompiler#hashSources hash} of the file and its includes, taken before
+     *             they were compiled, or null if it is unknown and the run cannot be resumed.
+     * @return The key identifying the run in later records.
+     */
+    long start(String fileName, byte[] hash, String sender) {
+        long key;
+        do {
+            key = ThreadLocalRandom.current().nextLong();
+        } while (key == 0);
+        starts.add(new Start(key, fileName, sender, System.currentTimeMillis(), hash == null ? new byte[0] : hash));
+        return key;
+    }
+
+    /**
+     * Records the position of a run. Only the latest position before each commit is written.
+     */
+    void progress(long key, long position) {
+        positions.put(key, position);
+    }
+
+    /**
+     * Records the number of steps a run took before reaching its first {@code !foreach}.
+     */
+    void foreach(long key, long step) {
+        foreachSteps.put(key, step);
+    }
+
+    /**
+     * Records that a run completed or was cancelled, so it is not offered for recovery.
+     */
+    void end(long key) {
+        ends.add(key);
+    }
+
+    /**
+     * @return The runs that were interrupted by the last shutdown or crash and are not yet
+     *         resumed or discarded. Safe to call from any thread.
+     */
+    List<Entry> getInterrupted() {
+        return interrupted;
+    }
+
+    /**
+     * @return The interrupted run with the given number, or null if there is none.
+     */
+    Entry getInterrupted(int number) {
+        for (Entry entry : interrupted) {
+            if (entry.number() == number) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stops offering an interrupted run for recovery. Must be called on the main thread.
+     * @return False if it was already resumed or discarded.
+     */
+    boolean discard(Entry entry) {
+        List<Entry> remaining = new ArrayList<>(interrupted);
+        if (!remaining.remove(entry)) {
+            return false;
+        }
+        interrupted = List.copyOf(remaining);
+        end(entry.key());
+        return true;
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                synchronized (signal) {
+                    if (!closed) {
+                        signal.wait(commitIntervalMillis);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            commit();
+        }
+    }
+
+    /**
+     * Writes everything queued since the last commit and forces it to disk.
+     */
+    private synchronized void commit() {
+        if (channel == null) {
+            return;
+        }
+        // Starts go first and ends last, so the records of a run stay in order even if it
+        // started and ended within the same commit
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            Start start;
+            while ((start = starts.poll()) != null) {
+                writeStart(out, start.key(), start.fileName(), start.sender(), start.startedAt(), start.hash());
+            }
+            for (Long key : positions.keySet()) {
+                Long position = positions.remove(key);
+                if (position != null) {
+                    writeProgress(out, key, position);
+                }
+            }
+            for (Long key : foreachSteps.keySet()) {
+                Long step = foreachSteps.remove(key);
+                if (step != null) {
+                    writeForeach(out, key, step);
+                }
+            }
+            Long key;
+            while ((key = ends.poll()) != null) {
+                out.writeByte(END);
+                out.writeLong(key);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode journal records", e);
+        }
+        if (bytes.size() == 0) {
+            return;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not write the run journal; the progress of batches is no longer recorded", e);
+            closeChannel();
+        }
+    }
+
+    /**
+     * Replaces the journal with the records of the interrupted runs. The file is replaced atomically,
+     * so a crash in between leaves the old journal.
+     */
+    private void compact(List<Entry> entries) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            for (Entry entry : entries) {
+                writeStart(out, entry.key(), entry.fileName(), entry.sender(), entry.startedAt(), entry.hash());
+                writeProgress(out, entry.key(), entry.position());
+                if (entry.foreachStep() >= 0) {
+                    writeForeach(out, entry.key(), entry.foreachStep());
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The runs that started but never ended, by key, in the order they started.
+     */
+    private static Map<Long, Entry> read(Path file, Logger logger) {
+        Map<Long, Entry> entries = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            return entries;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int magic = in.readInt();
+            short version = in.readShort();
+            if (magic != MAGIC || version != VERSION) {
+                logger.warning("Ignoring run journal with an unknown format: " + file.getFileName());
+                return entries;
+            }
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                long key = in.readLong();
+                if (type == START) {
+                    long startedAt = in.readLong();
+                    String fileName = in.readUTF();
+                    String sender = in.readUTF();
+                    byte[] hash = new byte[in.readUnsignedByte()];
+                    in.readFully(hash);
+                    entries.put(key, new Entry(0, key, fileName, sender, startedAt, hash, 0, -1));
+                } else if (type == PROGRESS) {
+                    long position = in.readLong();
+                    entries.computeIfPresent(key, (k, entry) -> entry.at(position));
+                } else if (type == FOREACH) {
+                    long step = in.readLong();
+                    entries.computeIfPresent(key, (k, entry) -> entry.withForeach(step));
+                } else if (type == END) {
+                    entries.remove(key);
+                } else {
+                    logger.warning("Run journal is corrupt after " + entries.size() + " interrupted run(s); ignoring the rest");
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            // The last record was cut off by a crash; everything before it is intact
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read the run journal", e);
+        }
+        return entries;
+    }
+
+    private static void writeStart(DataOutputStream out, long key, String fileName, String sender, long startedAt,
+                                   byte[] hash) throws IOException {
+        out.writeByte(START);
+        out.writeLong(key);
+        out.writeLong(startedAt);
+        out.writeUTF(fileName);
+        out.writeUTF(sender);
+        out.writeByte(hash.length);
+        out.write(hash);
+    }
+
+    private static void writeProgress(DataOutputStream out, long key, long position) throws IOException {
+        out.writeByte(PROGRESS);
+        out.writeLong(key);
+        out.writeLong(position);
+    }
+
+    private static void writeForeach(DataOutputStream out, long key, long step) throws IOException {
+        out.writeByte(FOREACH);
+        out.writeLong(key);
+        out.writeLong(step);
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        channel = null;
+    }
+
+    /**
+     * Stops the writer thread and commits what is still queued. Called when the plugin is disabled.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            commit();
+            if (channel != null) {
+                closeChannel();
+            }
+        }
+    }
+}
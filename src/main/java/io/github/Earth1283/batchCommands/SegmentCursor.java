@@ -0,0 +1,221 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Expands {@code !include} and loop actions while a batch runs. Instead of copying an included
+ * file's actions into every batch, or a loop body once per iteration, the cursor steps into the
+ * shared segment and returns to the enclosing batch once the segment is exhausted. Memory therefore
+ * depends on the nesting depth, not on the number of iterations. Includes and loops nest; the
+ * compiler guarantees includes never form a cycle.
+ * <p>
+ * Inside a loop, {@code {i}} (the iteration, starting at 1), {@code {player}} and {@code {world}}
+ * are replaced in command arguments. The command name itself is never substituted, so the blacklist
+ * and linter results of the body stay valid for every iteration.
+ */
+final class SegmentCursor implements BatchCursor {
+
+    private final BatchCursor base;
+    // The segments currently being executed, innermost first
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    // The number of loops among the frames; placeholders are only substituted inside one
+    private int loopDepth = 0;
+    // The action returned by the last peek(), after substitution
+    private BatchAction current;
+    // The number of actions consumed by advance()
+    private long steps = 0;
+    private long foreachStep = -1;
+
+    SegmentCursor(BatchCursor base) {
+        this.base = base;
+    }
+
+    private static final class Frame {
+        final List<BatchAction> actions;
+        /** The loop variable, e.g. "player", or null for includes and {@code !repeat}. */
+        final String variable;
+        /** The value of {@link #variable} per iteration, snapshotted when the loop starts. */
+        final List<String> values;
+        final int iterations;
+        final boolean loop;
+        int iteration = 0;
+        int index = 0;
+
+        Frame(List<BatchAction> actions, String variable, List<String> values, int iterations, boolean loop) {
+            this.actions = actions;
+            this.variable = variable;
+            this.values = values;
+            this.iterations = iterations;
+            this.loop = loop;
+        }
+    }
+
+    @Override
+    public BatchAction peek() {
+        if (current != null) {
+            return current;
+        }
+        while (true) {
+            Frame frame = frames.peek();
+            BatchAction action;
+            if (frame == null) {
+                action = base.peek();
+                if (action == null || action == PENDING) {
+                    return action;
+                }
+            } else if (frame.index >= frame.actions.size()) {
+                if (++frame.iteration < frame.iterations) {
+                    frame.index = 0;
+                } else {
+                    frames.pop();
+                    if (frame.loop) {
+                        loopDepth--;
+                    }
+                }
+                continue;
+            } else {
+                action = frame.actions.get(frame.index);
+            }
+
+            if (action.segment == null) {
+                current = loopDepth == 0 ? action : substitute(action);
+                return current;
+            }
+            consume(frame);
+            if (!action.segment.actions.isEmpty()) {
+                enter(action);
+            }
+        }
+    }
+
+    @Override
+    public void advance() {
+        current = null;
+        consume(frames.peek());
+        steps++;
+    }
+
+    /**
+     * @return The number of steps taken before the first {@code !foreach} was reached, or -1 if none
+     *         was reached yet. The steps after it depend on who was online, so a run can only be
+     *         resumed by position up to there.
+     */
+    long foreachStep() {
+        return foreachStep;
+    }
+
+    private void consume(Frame frame) {
+        if (frame == null) {
+            base.advance();
+        } else {
+            frame.index++;
+        }
+    }
+
+    private void enter(BatchAction action) {
+        List<BatchAction> body = action.segment.actions;
+        switch (action.type) {
+            case REPEAT:
+                frames.push(new Frame(body, null, null, (int) action.seconds, true));
+                loopDepth++;
+                break;
+            case FOREACH:
+                if (foreachStep < 0) {
+                    foreachStep = steps;
+                }
+                List<String> values = LineTokenizer.PLAYER.equals(action.argument) ? onlinePlayers() : worlds();
+                if (!values.isEmpty()) {
+                    frames.push(new Frame(body, action.argument, values, values.size(), true));
+                    loopDepth++;
+                }
+                break;
+            default:
+                frames.push(new Frame(body, null, null, 1, false));
+                break;
+        }
+    }
+
+    /**
+     * Replaces the placeholders of the enclosing loops in the arguments of a command.
+     */
+    private BatchAction substitute(BatchAction action) {
+        String command = action.command;
+        int brace = action.type == BatchAction.Type.COMMAND ? command.indexOf('{', action.nameEnd) : -1;
+        if (brace < 0) {
+            return action;
+        }
+
+        StringBuilder out = new StringBuilder(command.length() + 16).append(command, 0, brace);
+        int i = brace;
+        while (i < command.length()) {
+            char c = command.charAt(i);
+            if (c == '{') {
+                int close = command.indexOf('}', i + 1);
+                String value = close < 0 ? null : lookup(command.substring(i + 1, close));
+                if (value != null) {
+                    out.append(value);
+                    i = close + 1;
+                    continue;
+                }
+            }
+            out.append(c);
+            i++;
+        }
+        return new BatchAction(BatchAction.Type.COMMAND, out.toString(), action.name, action.nameStart, action.nameEnd, 0, null);
+    }
+
+    /**
+     * @return The value of a placeholder in the innermost loop defining it, or null to leave it as-is.
+     */
+    private String lookup(String placeholder) {
+        boolean index = placeholder.equals("i");
+        for (Frame frame : frames) {
+            if (index && frame.loop) {
+                return String.valueOf(frame.iteration + 1);
+            }
+            if (frame.variable != null && frame.variable.equals(placeholder)) {
+                return frame.values.get(frame.iteration);
+            }
+        }
+        return null;
+    }
+
+    private static List<String> onlinePlayers() {
+        List<String> names = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            names.add(player.getName());
+        }
+        return names;
+    }
+
+    private static List<String> worlds() {
+        List<String> names = new ArrayList<>();
+        for (World world : Bukkit.getWorlds()) {
+            names.add(world.getName());
+        }
+        return names;
+    }
+
+    @Override
+    public int skippedCount() {
+        // Commands skipped in included files are already counted by the compiler
+        return base.skippedCount();
+    }
+
+    @Override
+    public LintReport report() {
+        return base.report();
+    }
+
+    @Override
+    public void close() {
+        base.close();
+    }
+}
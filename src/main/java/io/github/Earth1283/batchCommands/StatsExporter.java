@@ -0,0 +1,110 @@
+package io.github.Earth1283.batchCommands;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Writes a {@link DispatchStats.Snapshot} to the plugin folder. Does file I/O, so call it from an async thread.
+ * <p>
+ * The CSV format has one row per command name, which is what is needed to find the slow commands of
+ * a script. The JSON format additionally contains the per-tick statistics and the recent runs.
+ */
+final class StatsExporter {
+
+    private StatsExporter() {
+    }
+
+    /**
+     * @param folder The folder to write to; it is created if needed.
+     * @param json True for JSON, false for CSV.
+     * @return The file that was written.
+     */
+    static File export(DispatchStats.Snapshot snapshot, File folder, boolean json) throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = new File(folder, "dispatch-stats-" + timestamp + (json ? ".json" : ".csv"));
+
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            if (json) {
+                writeJson(snapshot, writer);
+            } else {
+                writeCsv(snapshot, writer);
+            }
+        }
+        return file;
+    }
+
+    private static void writeCsv(DispatchStats.Snapshot snapshot, Writer writer) throws IOException {
+        writer.write("command,count,total_ms,avg_ms,p50_ms,p99_ms,max_ms\n");
+        for (String name : snapshot.commandsByTotalTime()) {
+            DispatchStats.Histogram histogram = snapshot.commands().get(name);
+            writer.write(csv(name) + "," + histogram.count + "," + ms(histogram.totalNanos) + ","
+                    + ms(histogram.totalNanos / histogram.count) + "," + ms(histogram.percentile(50)) + ","
+                    + ms(histogram.percentile(99)) + "," + ms(histogram.maxNanos) + "\n");
+        }
+    }
+
+    private static void writeJson(DispatchStats.Snapshot snapshot, Writer writer) throws IOException {
+        writer.write("{\n  \"since\": " + snapshot.sinceMillis() + ",\n  \"commands\": [");
+        boolean first = true;
+        for (String name : snapshot.commandsByTotalTime()) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("    {\"command\": " + json(name) + ", " + histogramJson(snapshot.commands().get(name)) + "}");
+        }
+        writer.write("\n  ],\n  \"ticks\": {" + histogramJson(snapshot.ticks()) + "},\n  \"runs\": [");
+        first = true;
+        for (DispatchStats.RunSummary run : snapshot.runs()) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("    {\"id\": " + run.id() + ", \"file\": " + json(run.fileName()) + ", \"outcome\": " + json(run.outcome())
+                    + ", \"commands\": " + run.commands() + ", \"dispatch_ms\": " + ms(run.dispatchNanos())
+                    + ", \"wall_ms\": " + run.wallMillis() + "}");
+        }
+        writer.write("\n  ]\n}\n");
+    }
+
+    private static String histogramJson(DispatchStats.Histogram histogram) {
+        long average = histogram.count == 0 ? 0 : histogram.totalNanos / histogram.count;
+        return "\"count\": " + histogram.count + ", \"total_ms\": " + ms(histogram.totalNanos)
+                + ", \"avg_ms\": " + ms(average) + ", \"p50_ms\": " + ms(histogram.percentile(50))
+                + ", \"p99_ms\": " + ms(histogram.percentile(99)) + ", \"max_ms\": " + ms(histogram.maxNanos);
+    }
+
+    /**
+     * Formats nanoseconds as milliseconds with three decimals.
+     */
+    static String ms(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String json(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < ' ') {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,229 @@
+package io.github.Earth1283.batchCommands;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes very large batch files while they are still being read.
+ * <p>
+ * A background thread reads the file through a UTF-8 decoding NIO channel, compiles it in chunks
+ * and hands the chunks to the main thread through a bounded queue. When the queue is full the
+ * reader waits, so memory stays proportional to the chunk size no matter how long the file is.
+ * The body of a loop can only be handed over once the loop is closed, so loops with more lines
+ * than {@code maxLoopLines} stop the stream.
+ * The main thread consumes the chunks through the {@link BatchCursor} side of this class.
+ */
+final class StreamingBatchReader implements BatchCursor, Runnable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    // Compared by identity, marks the end of the stream
+    private static final List<BatchAction> END_OF_STREAM = new ArrayList<>(0);
+
+    private final Path path;
+    private final BatchCompiler.Compilation compilation;
+    private final int chunkSize;
+    private final long maxLoopLines;
+    private final BlockingQueue<List<BatchAction>> queue;
+    private final BiFunction<List<LintWarning>, List<String>, LintReport> reporter;
+    private final Logger logger;
+
+    private volatile boolean closed = false;
+
+    // Published by the reader before END_OF_STREAM is queued
+    private int skippedCount = 0;
+    private LintReport report;
+
+    // Main thread state
+    private List<BatchAction> chunk = Collections.emptyList();
+    private int index = 0;
+    private boolean finished = false;
+
+    /**
+     * @param reporter Builds the report of the warnings and invalid {@code !sleep} lines once the file
+     *                 has been read. Called on the reader thread.
+     * @param maxLoopLines The most lines the open loops may hold, or 0 or less for no limit.
+     */
+    StreamingBatchReader(Path path, BatchCompiler.Compilation compilation, int chunkSize, int queueChunks,
+                         long maxLoopLines, BiFunction<List<LintWarning>, List<String>, LintReport> reporter,
+                         Logger logger) {
+        this.path = path;
+        this.compilation = compilation;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxLoopLines = maxLoopLines;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueChunks));
+        this.reporter = reporter;
+        this.logger = logger;
+    }
+
+    /**
+     * Starts reading the file on a dedicated background thread.
+     */
+    void start() {
+        Thread thread = new Thread(this, "BatchCommands-Stream-" + path.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the reader, e.g. when the run is abandoned. Chunks that were already queued are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+    }
+
+    @Override
+    public void run() {
+        List<LintWarning> extraWarnings = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+            CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+            StringBuilder line = new StringBuilder();
+            int lineNumber = 0;
+            boolean afterCarriageReturn = false;
+            boolean endOfFile = false;
+
+            while (!closed && !endOfFile) {
+                endOfFile = channel.read(bytes) == -1;
+                bytes.flip();
+                decoder.decode(bytes, chars, endOfFile);
+                if (endOfFile) {
+                    decoder.flush(chars);
+                }
+                bytes.compact();
+                chars.flip();
+
+                // Same line terminators as BufferedReader: \n, \r or \r\n
+                while (chars.hasRemaining()) {
+                    char c = chars.get();
+                    if (c == '\n' && afterCarriageReturn) {
+                        afterCarriageReturn = false;
+                        continue;
+                    }
+                    afterCarriageReturn = c == '\r';
+                    if (c == '\n' || c == '\r') {
+                        compilation.accept(line.toString(), ++lineNumber);
+                        line.setLength(0);
+                        if (maxLoopLines > 0 && compilation.openLoopActions() > maxLoopLines) {
+                            // Everything before the loop still runs
+                            int loopLine = compilation.openLoopLine();
+                            compilation.lintPending();
+                            publish(compilation.drainActions());
+                            extraWarnings.add(new LintWarning(null, loopLine, null, "This loop has more than "
+                                    + maxLoopLines + " lines, which a streamed file cannot hold in memory"
+                                    + " (streaming.max-loop-lines). It and the remaining lines were not executed."));
+                            return;
+                        }
+                        // Lines inside loops wait for the linter without becoming actions yet
+                        if (compilation.pendingLineCount() >= chunkSize) {
+                            compilation.lintPending();
+                        }
+                        if (compilation.actions.size() >= chunkSize) {
+                            publish(compilation.drainActions());
+                        }
+                    } else {
+                        line.append(c);
+                    }
+                }
+                chars.clear();
+            }
+
+            if (line.length() > 0) {
+                compilation.accept(line.toString(), ++lineNumber);
+            }
+            compilation.lintPending();
+            compilation.finish();
+            publish(compilation.drainActions());
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not read batch file: " + path.getFileName(), e);
+            extraWarnings.add(new LintWarning(null, 0, null, "Reading the file failed. Remaining lines were not executed."));
+        } catch (BatchLinter.LinterTimeoutException e) {
+            extraWarnings.add(new LintWarning(null, 0, null, "Linter timed out. Remaining lines were not executed."));
+        } finally {
+            List<LintWarning> allWarnings = new ArrayList<>(compilation.warnings);
+            allWarnings.addAll(extraWarnings);
+
+            skippedCount = compilation.skippedCount;
+            try {
+                // Grouped and rendered here, so the main thread only sends the result
+                report = reporter.apply(allWarnings, compilation.invalidSleepLines);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Could not build the lint report of " + path.getFileName(), e);
+            }
+            publish(END_OF_STREAM);
+        }
+    }
+
+    private void publish(List<BatchAction> actions) {
+        if (actions.isEmpty() && actions != END_OF_STREAM) {
+            return;
+        }
+        try {
+            // Backpressure: wait while the main thread is behind, but give up once closed
+            while (!closed && !queue.offer(actions, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                // Keep waiting
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+
+    @Override
+    public BatchAction peek() {
+        while (index >= chunk.size()) {
+            if (finished) {
+                return null;
+            }
+            List<BatchAction> next = queue.poll();
+            if (next == null) {
+                return PENDING;
+            }
+            if (next == END_OF_STREAM) {
+                finished = true;
+                return null;
+            }
+            chunk = next;
+            index = 0;
+        }
+        return chunk.get(index);
+    }
+
+    @Override
+    public void advance() {
+        index++;
+    }
+
+    @Override
+    public int skippedCount() {
+        return skippedCount;
+    }
+
+    @Override
+    public LintReport report() {
+        return report;
+    }
+}
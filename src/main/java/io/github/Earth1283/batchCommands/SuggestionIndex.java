@@ -0,0 +1,161 @@
+package io.github.Earth1283.batchCommands;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+
+/**
+ * A BK-tree over the known command names, used for "did you mean" suggestions.
+ * It is built once per command set and answers lookups without comparing against every entry.
+ * <p>
+ * Lookups return exactly what a linear scan over the source collection would: the candidate with the
+ * smallest Levenshtein distance, ties going to the one that came first in iteration order, and only
+ * if that distance is between 1 and {@link #MAX_DISTANCE}.
+ */
+final class SuggestionIndex {
+
+    static final int MAX_DISTANCE = 3;
+
+    private static final class Node {
+        final String word;
+        final int ordinal;
+        Node[] children = new Node[0];
+        int maxEdge = -1;
+
+        Node(String word, int ordinal) {
+            this.word = word;
+            this.ordinal = ordinal;
+        }
+
+        Node child(int distance) {
+            return distance < children.length ? children[distance] : null;
+        }
+
+        void setChild(int distance, Node node) {
+            if (distance >= children.length) {
+                children = Arrays.copyOf(children, distance + 1);
+            }
+            children[distance] = node;
+            maxEdge = Math.max(maxEdge, distance);
+        }
+    }
+
+    private final Node root;
+
+    private SuggestionIndex(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Builds an index over the given names. The collection's iteration order decides ties.
+     */
+    static SuggestionIndex build(Collection<String> words) {
+        Node root = null;
+        int ordinal = 0;
+        for (String word : words) {
+            Node node = new Node(word, ordinal++);
+            if (root == null) {
+                root = node;
+                continue;
+            }
+            Node current = root;
+            while (true) {
+                int distance = distance(word, current.word, Integer.MAX_VALUE);
+                if (distance == 0) {
+                    break; // Duplicate, the earlier ordinal wins anyway
+                }
+                Node next = current.child(distance);
+                if (next == null) {
+                    current.setChild(distance, node);
+                    break;
+                }
+                current = next;
+            }
+        }
+        return new SuggestionIndex(root);
+    }
+
+    /**
+     * Finds the closest known name to the target.
+     * @param target The unknown command name.
+     * @return The suggestion, or null if nothing is close enough or the target itself is known.
+     */
+    String closest(String target) {
+        if (root == null) {
+            return null;
+        }
+
+        Node best = null;
+        int bestDistance = MAX_DISTANCE + 1;
+
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int radius = Math.min(bestDistance, MAX_DISTANCE);
+
+            // Past radius + maxEdge neither this node nor any of its children can qualify
+            int distance = distance(target, node.word, radius + Math.max(node.maxEdge, 0));
+
+            if (distance < bestDistance || (distance == bestDistance && best != null && node.ordinal < best.ordinal)) {
+                if (distance <= MAX_DISTANCE) {
+                    best = node;
+                    bestDistance = distance;
+                    radius = Math.min(bestDistance, MAX_DISTANCE);
+                }
+            }
+
+            int from = Math.max(1, distance - radius);
+            int to = Math.min(node.maxEdge, distance + radius);
+            for (int edge = from; edge <= to; edge++) {
+                Node child = node.child(edge);
+                if (child != null) {
+                    pending.push(child);
+                }
+            }
+        }
+
+        return best != null && bestDistance > 0 ? best.word : null;
+    }
+
+    /**
+     * Levenshtein distance using two rows, giving up early once the result must exceed the limit.
+     * @return The distance, or any value greater than {@code limit} if it exceeds the limit.
+     */
+    static int distance(String lhs, String rhs, int limit) {
+        int n = lhs.length();
+        int m = rhs.length();
+        if (Math.abs(n - m) > limit) {
+            return limit + 1;
+        }
+
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= n; i++) {
+            current[0] = i;
+            int rowMin = i;
+            char c = lhs.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                int cost = (c == rhs.charAt(j - 1)) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                current[j] = value;
+                if (value < rowMin) {
+                    rowMin = value;
+                }
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return previous[m];
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Schedules the plugin's work on the threads the server expects it on.
+ * <p>
+ * On Paper and Spigot, "global" work runs on the main thread. On Folia there is no main thread;
+ * console commands and server-wide state belong to the global region, so global work runs on the
+ * global region scheduler instead, and batch dispatch never competes with the region threads.
+ * Everything the plugin does with batch runs is global work.
+ */
+interface TaskScheduler {
+
+    /**
+     * A scheduled repeating task.
+     */
+    interface Task {
+        void cancel();
+    }
+
+    /**
+     * Runs a task on a background thread.
+     */
+    void runAsync(Runnable task);
+
+    /**
+     * Runs a task on the global thread on the next tick.
+     */
+    void runGlobal(Runnable task);
+
+    /**
+     * Runs a task on the global thread every {@code periodTicks} ticks.
+     * @param delayTicks The ticks before the first run, at least 1.
+     */
+    Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * @return True if the calling thread is the global thread.
+     */
+    boolean isGlobalThread();
+
+    /**
+     * Picks the scheduler matching the server the plugin runs on.
+     */
+    static TaskScheduler create(Plugin plugin) {
+        return isFolia() ? new FoliaTaskScheduler(plugin) : new BukkitTaskScheduler(plugin);
+    }
+
+    static boolean isFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
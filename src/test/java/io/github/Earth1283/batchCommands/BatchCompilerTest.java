@@ -0,0 +1,146 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchCompilerTest {
+
+    private static final Logger LOGGER = Logger.getLogger("BatchCompilerTest");
+    private static final Set<String> KNOWN = Set.of("say");
+
+    @TempDir
+    Path folder;
+
+    private BatchSettings settings;
+    private BatchCompiler compiler;
+
+    @BeforeEach
+    void setUp() {
+        settings = BatchSettings.load(new YamlConfiguration(), new YamlConfiguration(), LOGGER);
+        compiler = new BatchCompiler(folder, () -> null);
+    }
+
+    private File write(String name, String text) throws IOException {
+        Path file = folder.resolve(name + settings.fileExtension);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, text);
+        return file.toFile();
+    }
+
+    @Test
+    void sourceHashCoversIncludedFiles() throws IOException {
+        File main = write("main", "say a\n!include setup\nsay b\n");
+        write("setup", "say setup\n!include nested/deep\n");
+        write("nested/deep", "say deep\n");
+        byte[] before = compiler.hashSources(main, settings);
+        assertArrayEquals(before, compiler.hashSources(main, settings));
+
+        write("nested/deep", "say deeper\n");
+        assertFalse(Arrays.equals(before, compiler.hashSources(main, settings)));
+    }
+
+    @Test
+    void sourceHashNoticesIncludesAppearing() throws IOException {
+        File main = write("main", "!include later\nsay a\n");
+        byte[] missing = compiler.hashSources(main, settings);
+
+        write("later", "");
+        assertFalse(Arrays.equals(missing, compiler.hashSources(main, settings)));
+    }
+
+    @Test
+    void sourceHashStopsAtIncludeCycles() throws IOException {
+        File main = write("main", "!include other\n");
+        write("other", "!include main\n");
+        byte[] before = compiler.hashSources(main, settings);
+
+        write("other", "!include main\nsay changed\n");
+        assertFalse(Arrays.equals(before, compiler.hashSources(main, settings)));
+    }
+
+    private static List<String> commands(CompiledBatch batch) {
+        return batch.actions.stream().map(action -> action.type + " " + action.command).toList();
+    }
+
+    @Test
+    void selfIncludeIsSkipped() throws Exception {
+        File main = write("main", "say a\n!include main\nsay b\n");
+        CompiledBatch batch = compiler.compile(main, KNOWN, settings);
+
+        assertEquals(List.of("COMMAND say a", "COMMAND say b"), commands(batch));
+        assertEquals(1, batch.warnings.size());
+        LintWarning warning = batch.warnings.get(0);
+        assertNull(warning.file());
+        assertEquals(2, warning.line());
+        assertEquals("Include cycle: main.batch -> main.batch. Skipped.", warning.message());
+    }
+
+    @Test
+    void indirectCycleIsReportedInTheFileClosingIt() throws Exception {
+        File main = write("main", "!include a\n");
+        write("a", "say a\n!include nested/b\n");
+        write("nested/b", "say b\n!include main\n");
+        CompiledBatch batch = compiler.compile(main, KNOWN, settings);
+
+        assertEquals(1, batch.warnings.size());
+        LintWarning warning = batch.warnings.get(0);
+        assertEquals("nested/b.batch", warning.file());
+        assertEquals(2, warning.line());
+        assertEquals("Include cycle: main.batch -> a.batch -> nested/b.batch -> main.batch. Skipped.", warning.message());
+
+        // Everything up to the cycle still runs
+        CompiledBatch a = batch.actions.get(0).segment;
+        assertEquals(List.of("COMMAND say a", "INCLUDE !include nested/b"), commands(a));
+        assertEquals(List.of("COMMAND say b"), commands(a.actions.get(1).segment));
+    }
+
+    @Test
+    void includingTheSameFileTwiceIsNoCycle() throws Exception {
+        File main = write("main", "!include a\n!include b\n!include shared\n");
+        write("a", "!include shared\n");
+        write("b", "!include shared\n");
+        write("shared", "say shared\n");
+        CompiledBatch batch = compiler.compile(main, KNOWN, settings);
+
+        assertTrue(batch.warnings.isEmpty(), batch.warnings::toString);
+        CompiledBatch shared = batch.actions.get(2).segment;
+        assertSame(shared, batch.actions.get(0).segment.actions.get(0).segment);
+        assertSame(shared, batch.actions.get(1).segment.actions.get(0).segment);
+    }
+
+    @Test
+    void segmentsThatSkippedCycleAreNotCached() throws Exception {
+        BatchCache cache = new BatchCache(100, 100_000);
+        BatchCompiler cachingCompiler = new BatchCompiler(folder, () -> cache);
+        File main = write("main", "!include cyclic\n!include plain\n");
+        File cyclic = write("cyclic", "!include main\n");
+        File plain = write("plain", "say plain\n");
+        cachingCompiler.compile(main, KNOWN, settings);
+
+        assertNull(cache.get(BatchCache.Key.of(cyclic)));
+        assertNotNull(cache.get(BatchCache.Key.of(plain)));
+
+        // Compiled on its own, the file reports the cycle from its own point of view
+        CompiledBatch batch = cachingCompiler.compile(cyclic, KNOWN, settings);
+        assertEquals("Include cycle: cyclic.batch -> main.batch -> cyclic.batch. Skipped.", batch.warnings.get(0).message());
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.Earth1283.batchCommands;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CustomPatternMatcherTest {
+
+    private static final Logger LOGGER = Logger.getLogger("CustomPatternMatcherTest");
+
+    /**
+     * Every pair is a regex and a line it matches. The derived literal must occur in the line, or
+     * the prefilter would skip a rule that applies.
+     */
+    @ParameterizedTest
+    @CsvSource(delimiterString = "=>", quoteCharacter = '"', value = {
+            "^/?kill @e(\\s|$) => kill @e",
+            "^/?kill @e(\\s|$) => /kill @e now",
+            "@[aepr](\\s|$) => say @a",
+            "give \\x20diamond => give  diamond",
+            "give\\x{20}diamond => give diamond",
+            "caf\\u00e9 open => café open",
+            "op\\0101dmin => opAdmin",
+            "(?<who>\\w+) kicks \\k<who> => bob kicks bob",
+            "say \\p{L}+ now => say hello now",
+            "say \\pL+ now => say hello now",
+            "tp \\N{LATIN SMALL LETTER A}b => tp ab",
+            "ban [a-z&&[^x]]yz => ban ayz",
+            "ban [\\[]yz => ban [yz",
+            "ban []a]yz => ban ]yz",
+            "(?x) st op => stop",
+            "(?ix:st op) => STOP",
+            "\\Qa.b\\Ec => a.bc",
+            "(?i)Kill all => KILL ALL",
+            "fill \\d+ \\d+ => fill 1 2",
+            "ab*c => ac",
+            "ab?c => ac",
+            "ab{0}c => ac",
+            "abc+d => abcccd",
+            "(\\w)\\1 run => aa run",
+            "\\bstop\\b now => stop now",
+            "a\\.b => a.b",
+            "x(?=yz)yz => xyz",
+            "say (hello|bye) world => say bye world",
+    })
+    void derivedLiteralOccursInEveryMatch(String regex, String line) {
+        assertTrue(Pattern.compile(regex).matcher(line).find(), "test case must match: " + regex);
+
+        String literal = CustomPatternMatcher.requiredLiteral(regex);
+        if (literal != null) {
+            assertTrue(line.toLowerCase().contains(literal.toLowerCase()),
+                    "'" + literal + "' derived from " + regex + " is missing from '" + line + "'");
+        }
+
+        CustomPatternMatcher matcher = CustomPatternMatcher.load(
+                List.of(Map.of("pattern", regex, "severity", "block")), LOGGER);
+        assertNotNull(matcher.match(line), regex);
+        assertNotNull(matcher.matchBlocking(line), regex);
+    }
+
+    @Test
+    void alternationInsideGroupStillUsesPrefilter() {
+        assertEquals("kill @e", CustomPatternMatcher.requiredLiteral("^/?kill @e(\\s|$)"));
+        assertEquals(" world", CustomPatternMatcher.requiredLiteral("say (hello|bye) world"));
+    }
+
+    @Test
+    void topLevelAlternationHasNoLiteral() {
+        assertNull(CustomPatternMatcher.requiredLiteral("kill @e|kill @a"));
+    }
+
+    @Test
+    void unsupportedSyntaxHasNoLiteral() {
+        assertNull(CustomPatternMatcher.requiredLiteral("ban [a-z&&[^x]]yz"));
+        assertNull(CustomPatternMatcher.requiredLiteral("(?x) st op"));
+        assertNull(CustomPatternMatcher.requiredLiteral("\\Qa.b\\Ec"));
+        assertNull(CustomPatternMatcher.requiredLiteral("(?iu)straße"));
+    }
+
+    @Test
+    void escapeArgumentsAreNotLiteral() {
+        assertEquals("diamond", CustomPatternMatcher.requiredLiteral("give \\x20diamond"));
+        assertEquals(" open", CustomPatternMatcher.requiredLiteral("caf\\u00e9 open"));
+        assertEquals("say ", CustomPatternMatcher.requiredLiteral("say \\p{L}+ now"));
+    }
+
+    @Test
+    void linesWithoutLiteralAreSkipped() {
+        CustomPatternMatcher matcher = CustomPatternMatcher.load(List.of("^/?kill @e(\\s|$)"), LOGGER);
+        assertNull(matcher.match("say kill"));
+        assertNotNull(matcher.match("/kill @e"));
+    }
+}
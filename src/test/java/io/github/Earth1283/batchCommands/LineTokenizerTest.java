@@ -0,0 +1,120 @@
+package io.github.Earth1283.batchCommands;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class LineTokenizerTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "   ", "\t \t", "# a comment", "   #indented comment", "#!sleep 5"})
+    void blankLinesAndCommentsAreSkipped(String line) {
+        assertNull(LineTokenizer.parse(line));
+    }
+
+    @Test
+    void commandIsTrimmedAndNamed() {
+        BatchAction action = LineTokenizer.parse("  /Give @p diamond 64\t ");
+        assertEquals(BatchAction.Type.COMMAND, action.type);
+        assertEquals("/Give @p diamond 64", action.command);
+        assertEquals("give", action.name);
+        assertEquals(1, action.nameStart);
+        assertEquals(5, action.nameEnd);
+    }
+
+    @Test
+    void lineWithoutArgumentsIsItsOwnName() {
+        String line = "list";
+        BatchAction action = LineTokenizer.parse(line);
+        assertSame(line, action.command);
+        assertSame(line, action.name);
+    }
+
+    @Test
+    void tabsSeparateTheName() {
+        assertEquals("say", LineTokenizer.parse("say\thello").name);
+    }
+
+    @Test
+    void sleepTakesSeconds() {
+        BatchAction action = LineTokenizer.parse("!sleep 2.5");
+        assertEquals(BatchAction.Type.SLEEP, action.type);
+        assertEquals(2.5, action.seconds);
+        assertEquals(BatchAction.Type.SLEEP, LineTokenizer.parse("!SLEEP 1 ignored").type);
+    }
+
+    @Test
+    void anythingStartingWithSleepIsASleep() {
+        BatchAction action = LineTokenizer.parse("!sleepy 3");
+        assertEquals(BatchAction.Type.SLEEP, action.type);
+        assertEquals(3, action.seconds);
+    }
+
+    @Test
+    void sleepWithoutValidDurationIsInvalid() {
+        BatchAction missing = LineTokenizer.parse("!sleep");
+        assertEquals(BatchAction.Type.INVALID_SLEEP, missing.type);
+        assertNull(missing.argument);
+
+        BatchAction unparseable = LineTokenizer.parse("!sleep soon");
+        assertEquals(BatchAction.Type.INVALID_SLEEP, unparseable.type);
+        assertEquals("soon", unparseable.argument);
+    }
+
+    @Test
+    void includeKeepsTheRestOfTheLine() {
+        BatchAction action = LineTokenizer.parse("!include setup/My File");
+        assertEquals(BatchAction.Type.INCLUDE, action.type);
+        assertEquals("setup/My File", action.argument);
+        assertNull(LineTokenizer.parse("!include   ").argument);
+    }
+
+    @Test
+    void repeatTakesPositiveCount() {
+        BatchAction action = LineTokenizer.parse("!repeat 3");
+        assertEquals(BatchAction.Type.REPEAT, action.type);
+        assertEquals(3, action.seconds);
+        assertNull(action.argument);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "-2", "many", "1.5"})
+    void repeatKeepsInvalidCount(String count) {
+        BatchAction action = LineTokenizer.parse("!repeat " + count);
+        assertEquals(BatchAction.Type.REPEAT, action.type);
+        assertEquals(0, action.seconds);
+        assertEquals(count, action.argument);
+    }
+
+    @Test
+    void repeatWithoutCount() {
+        BatchAction action = LineTokenizer.parse("!repeat");
+        assertEquals(BatchAction.Type.REPEAT, action.type);
+        assertNull(action.argument);
+    }
+
+    @Test
+    void foreachTargetIsLowercase() {
+        BatchAction action = LineTokenizer.parse("!foreach PLAYER extra");
+        assertEquals(BatchAction.Type.FOREACH, action.type);
+        assertEquals(LineTokenizer.PLAYER, action.argument);
+        assertNull(LineTokenizer.parse("!foreach").argument);
+    }
+
+    @Test
+    void endIsCaseInsensitive() {
+        assertEquals(BatchAction.Type.END, LineTokenizer.parse(" !End ").type);
+    }
+
+    @Test
+    void otherMetaCommandsAreUnknown() {
+        BatchAction action = LineTokenizer.parse("!Wait 5");
+        assertEquals(BatchAction.Type.UNKNOWN_META, action.type);
+        assertEquals("!wait", action.name);
+        assertEquals("!Wait 5", action.command);
+    }
+}
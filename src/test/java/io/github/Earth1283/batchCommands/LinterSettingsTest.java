@@ -0,0 +1,44 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class LinterSettingsTest {
+
+    private static final Logger LOGGER = Logger.getLogger("LinterSettingsTest");
+
+    /**
+     * A linter.yml written before CUSTOM_PATTERN existed.
+     */
+    private static YamlConfiguration olderConfig(List<?> customPatterns) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("execution.lint-order", List.of("META_SYNTAX", "UNKNOWN_META", "BLACKLIST", "EXISTENCE"));
+        config.set("custom-patterns", customPatterns);
+        return config;
+    }
+
+    @Test
+    void customPatternsAreCheckedWhenMissingFromOlderLintOrder() throws BatchLinter.LinterTimeoutException {
+        LinterSettings settings = LinterSettings.load(olderConfig(List.of("@e(\\s|$)")), List.of(), LOGGER);
+
+        assertEquals(BatchLinter.LintCheck.CUSTOM_PATTERN, settings.order.get(settings.order.size() - 1));
+        BatchLinter.LinterResult result = new BatchLinter().check("kill @e", Set.of("kill"), settings, Long.MAX_VALUE);
+        assertNotNull(result.warning);
+        assertEquals(BatchLinter.LintCheck.CUSTOM_PATTERN, result.check);
+    }
+
+    @Test
+    void orderIsKeptWithoutCustomPatterns() {
+        LinterSettings settings = LinterSettings.load(olderConfig(List.of()), List.of(), LOGGER);
+
+        assertEquals(List.of(BatchLinter.LintCheck.META_SYNTAX, BatchLinter.LintCheck.UNKNOWN_META,
+                BatchLinter.LintCheck.BLACKLIST, BatchLinter.LintCheck.EXISTENCE), settings.order);
+    }
+}
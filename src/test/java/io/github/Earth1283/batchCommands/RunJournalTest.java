@@ -0,0 +1,164 @@
+package io.github.Earth1283.batchCommands;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunJournalTest {
+
+    private static final Logger LOGGER = Logger.getLogger("RunJournalTest");
+    private static final byte[] HASH = {1, 2, 3, 4};
+
+    @TempDir
+    Path folder;
+
+    private RunJournal journal;
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private Path file() {
+        return folder.resolve("journal.dat");
+    }
+
+    /**
+     * Closes the current journal, which commits everything, and reads it again as after a restart.
+     */
+    private List<RunJournal.Entry> restart() {
+        if (journal != null) {
+            journal.close();
+        }
+        journal = RunJournal.open(file(), 60_000, LOGGER);
+        assertNotNull(journal);
+        return journal.getInterrupted();
+    }
+
+    @Test
+    void onlyRunsThatNeverEndedAreInterrupted() {
+        restart();
+        long ended = journal.start("done", HASH, "alice");
+        long running = journal.start("running", HASH, "bob");
+        journal.progress(ended, 5);
+        journal.progress(running, 3);
+        journal.progress(running, 7);
+        journal.end(ended);
+
+        List<RunJournal.Entry> interrupted = restart();
+        assertEquals(1, interrupted.size());
+        RunJournal.Entry entry = interrupted.get(0);
+        assertEquals(1, entry.number());
+        assertEquals(running, entry.key());
+        assertEquals("running", entry.fileName());
+        assertEquals("bob", entry.sender());
+        assertEquals(7, entry.position());
+        assertEquals(-1, entry.foreachStep());
+        assertArrayEquals(HASH, entry.hash());
+    }
+
+    @Test
+    void compactionKeepsEverythingAcrossRestarts() {
+        restart();
+        long key = journal.start("loop", HASH, "alice");
+        journal.progress(key, 12);
+        journal.foreach(key, 4);
+
+        restart();
+        List<RunJournal.Entry> interrupted = restart();
+        assertEquals(1, interrupted.size());
+        assertEquals(12, interrupted.get(0).position());
+        assertEquals(4, interrupted.get(0).foreachStep());
+    }
+
+    @Test
+    void runsPastTheirFirstForeachCannotBeReplayed() {
+        restart();
+        long before = journal.start("before", HASH, "alice");
+        journal.progress(before, 4);
+        journal.foreach(before, 4);
+        long after = journal.start("after", HASH, "alice");
+        journal.progress(after, 5);
+        journal.foreach(after, 4);
+        long without = journal.start("without", HASH, "alice");
+        journal.progress(without, 100);
+
+        List<RunJournal.Entry> interrupted = restart();
+        assertFalse(interrupted.get(0).passedForeach());
+        assertTrue(interrupted.get(1).passedForeach());
+        assertFalse(interrupted.get(2).passedForeach());
+    }
+
+    @Test
+    void discardedRunsAreNotOfferedAgain() {
+        restart();
+        journal.start("a", HASH, "alice");
+        journal.start("b", HASH, "alice");
+
+        List<RunJournal.Entry> interrupted = restart();
+        assertTrue(journal.discard(interrupted.get(0)));
+        assertFalse(journal.discard(interrupted.get(0)));
+
+        interrupted = restart();
+        assertEquals(1, interrupted.size());
+        assertEquals("b", interrupted.get(0).fileName());
+    }
+
+    @Test
+    void recordCutOffByCrashEndsTheLog() throws IOException {
+        restart();
+        long key = journal.start("a", HASH, "alice");
+        journal.progress(key, 9);
+        restart();
+        journal.close();
+        journal = null;
+
+        // A progress record of which only the type and half the key reached the disk
+        byte[] bytes = Files.readAllBytes(file());
+        byte[] torn = {2, 0, 0, 0, 0};
+        byte[] appended = new byte[bytes.length + torn.length];
+        System.arraycopy(bytes, 0, appended, 0, bytes.length);
+        System.arraycopy(torn, 0, appended, bytes.length, torn.length);
+        Files.write(file(), appended);
+
+        List<RunJournal.Entry> interrupted = restart();
+        assertEquals(1, interrupted.size());
+        assertEquals(9, interrupted.get(0).position());
+    }
+
+    @Test
+    void otherFormatVersionsAreIgnored() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file()))) {
+            out.writeInt(0x42434A4C);
+            out.writeShort(1);
+            out.writeByte(1);
+            out.writeLong(42);
+        }
+        assertTrue(restart().isEmpty());
+    }
+
+    @Test
+    void runsWithoutHashNeverMatch() {
+        restart();
+        journal.start("unhashed", null, "alice");
+
+        RunJournal.Entry entry = restart().get(0);
+        assertFalse(entry.matches(new byte[0]));
+        assertFalse(entry.matches(HASH));
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.Earth1283.batchCommands;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingBatchReaderTest {
+
+    private static final Logger LOGGER = Logger.getLogger("StreamingBatchReaderTest");
+
+    @TempDir
+    Path folder;
+
+    private BatchSettings settings;
+    private final List<LintWarning> warnings = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        settings = BatchSettings.load(new YamlConfiguration(), new YamlConfiguration(), LOGGER);
+    }
+
+    @Test
+    void loopWithinLimitIsExecuted() throws Exception {
+        Path file = write(300);
+        List<BatchAction> actions = readAll(file, 1000);
+
+        assertEquals(3, actions.size());
+        assertEquals(BatchAction.Type.REPEAT, actions.get(1).type);
+        assertEquals(300, actions.get(1).segment.actions.size());
+        assertTrue(warnings.isEmpty(), warnings::toString);
+    }
+
+    @Test
+    void loopOverLimitStopsTheStream() throws Exception {
+        Path file = write(300);
+        List<BatchAction> actions = readAll(file, 100);
+
+        // Only the line before the loop runs
+        assertEquals(1, actions.size());
+        assertEquals("say before", actions.get(0).command);
+        assertEquals(1, warnings.size());
+        assertEquals(2, warnings.get(0).line());
+        assertTrue(warnings.get(0).message().contains("streaming.max-loop-lines"));
+    }
+
+    /**
+     * Writes a file with a line, a {@code !repeat} of {@code loopLines} lines and another line.
+     */
+    private Path write(int loopLines) throws IOException {
+        StringBuilder text = new StringBuilder("say before\n!repeat 2\n");
+        for (int i = 0; i < loopLines; i++) {
+            text.append("say ").append(i).append('\n');
+        }
+        text.append("!end\nsay after\n");
+        Path file = folder.resolve("loop.txt");
+        Files.writeString(file, text);
+        return file;
+    }
+
+    private List<BatchAction> readAll(Path file, long maxLoopLines) throws InterruptedException {
+        StreamingBatchReader reader = new StreamingBatchReader(file,
+                new BatchCompiler().begin(file.toFile(), Set.of("say"), settings, 100), 16, 2, maxLoopLines,
+                (found, invalidSleepLines) -> {
+                    warnings.addAll(found);
+                    return null;
+                }, LOGGER);
+        reader.start();
+
+        List<BatchAction> actions = new ArrayList<>();
+        BatchAction action;
+        while ((action = reader.peek()) != null) {
+            if (action == BatchCursor.PENDING) {
+                Thread.sleep(1);
+                continue;
+            }
+            actions.add(action);
+            reader.advance();
+        }
+        return actions;
+    }
+}
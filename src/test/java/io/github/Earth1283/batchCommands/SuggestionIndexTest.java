@@ -0,0 +1,103 @@
+package io.github.Earth1283.batchCommands;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuggestionIndexTest {
+
+    private static final List<String> COMMANDS = List.of("gamemode", "give", "kill", "teleport", "tp", "time", "weather");
+
+    @Test
+    void closestNameWins() {
+        SuggestionIndex index = SuggestionIndex.build(COMMANDS);
+        assertEquals("give", index.closest("giv"));
+        assertEquals("gamemode", index.closest("gamemod"));
+        assertEquals("weather", index.closest("waether"));
+        assertEquals("tp", index.closest("tpp"));
+    }
+
+    @Test
+    void knownNameHasNoSuggestion() {
+        assertNull(SuggestionIndex.build(COMMANDS).closest("kill"));
+    }
+
+    @Test
+    void distantNameHasNoSuggestion() {
+        SuggestionIndex index = SuggestionIndex.build(COMMANDS);
+        assertNull(index.closest("xyzzyx"));
+        // One edit more than the limit
+        assertNull(index.closest("kill" + "x".repeat(SuggestionIndex.MAX_DISTANCE + 1)));
+        assertEquals("kill", index.closest("kill" + "x".repeat(SuggestionIndex.MAX_DISTANCE)));
+    }
+
+    @Test
+    void tiesGoToTheFirstName() {
+        assertEquals("bat", SuggestionIndex.build(List.of("bat", "cat")).closest("hat"));
+        assertEquals("cat", SuggestionIndex.build(List.of("cat", "bat")).closest("hat"));
+        // A closer name later on still wins
+        assertEquals("hats", SuggestionIndex.build(List.of("bat", "cat", "hats")).closest("hatz"));
+    }
+
+    @Test
+    void emptyIndexHasNoSuggestion() {
+        assertNull(SuggestionIndex.build(List.of()).closest("say"));
+    }
+
+    @Test
+    void distanceGivesUpPastTheLimit() {
+        assertEquals(3, SuggestionIndex.distance("kitten", "sitting", Integer.MAX_VALUE));
+        assertEquals(3, SuggestionIndex.distance("kitten", "sitting", 3));
+        assertTrue(SuggestionIndex.distance("kitten", "sitting", 2) > 2);
+        assertTrue(SuggestionIndex.distance("a", "abcdef", 2) > 2);
+    }
+
+    /**
+     * The index must suggest exactly what comparing the target against every name would.
+     */
+    @Test
+    void matchesLinearScan() {
+        Random random = new Random(42);
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < 400) {
+            words.add(randomWord(random));
+        }
+        SuggestionIndex index = SuggestionIndex.build(words);
+        List<String> ordered = new ArrayList<>(words);
+
+        for (int i = 0; i < 2000; i++) {
+            String target = randomWord(random);
+            assertEquals(linearScan(ordered, target), index.closest(target), target);
+        }
+    }
+
+    private static String randomWord(Random random) {
+        char[] chars = new char[1 + random.nextInt(7)];
+        for (int i = 0; i < chars.length; i++) {
+            // A small alphabet, so that many names are close to each other and ties are common
+            chars[i] = (char) ('a' + random.nextInt(4));
+        }
+        return new String(chars);
+    }
+
+    private static String linearScan(List<String> words, String target) {
+        String best = null;
+        int bestDistance = SuggestionIndex.MAX_DISTANCE + 1;
+        for (String word : words) {
+            int distance = SuggestionIndex.distance(target, word, Integer.MAX_VALUE);
+            if (distance < bestDistance) {
+                best = word;
+                bestDistance = distance;
+            }
+        }
+        return bestDistance > 0 ? best : null;
+    }
+}